@@ -0,0 +1,56 @@
+package david.i.am.panels;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packing one 41-row DRAW image, boxed and primitive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitUtilsBenchmark {
+
+  private List<Integer> boxedRows;
+  private int[] rows;
+  private byte[] packed;
+  private PanelFrame frame;
+
+  @Setup
+  public void setup() {
+    rows = IntStream.range(0, 41).map(i -> (i * 37) & 0x1FF).toArray();
+    boxedRows = IntStream.of(rows).boxed().toList();
+    packed = new byte[BitUtils.packedLength(rows.length)];
+    frame = new PanelFrame();
+  }
+
+  @Benchmark
+  public byte[] packbitsList() {
+    return BitUtils.packbits(boxedRows);
+  }
+
+  @Benchmark
+  public byte[] packbitsArray() {
+    BitUtils.packbits(rows, 0, rows.length, packed, 0);
+    return packed;
+  }
+
+  @Benchmark
+  public PanelFrame packDrawFrame() {
+    return frame.clear().addPacked(CommunicationCreator.CommandVals.DRAW, rows, 0, rows.length);
+  }
+}
@@ -0,0 +1,91 @@
+package david.i.am.panels;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing /proc/stat, computing the per-core deltas and column layout, and rendering
+ * the CPU image, for machines of increasing core count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CpuServiceBenchmark {
+
+  @Param({"8", "16", "64", "256"})
+  public int cores;
+
+  @Param({"ONE_TO_ONE", "MAX", "MEAN", "BUSIEST"})
+  public CpuLayout.Mode layout;
+
+  private ProcStatSource source;
+  private CpuService cpuService;
+  private CpuLoad load;
+  private ProcStatReader before;
+  private ProcStatReader after;
+  private CpuService.CpuImage image;
+
+  @Setup
+  public void setup() throws Exception {
+    ProfileState profileState = new ProfileState();
+    profileState.setActiveProfile("cpu");
+    File statBefore = Fixtures.procStat(cores, 42, 0);
+    File statAfter = Fixtures.procStat(cores, 42, 100);
+    source = new ProcStatSource(statAfter.toPath(), 1000, layout);
+    cpuService = new CpuService(profileState, source);
+    load = source.getLoad();
+    before = new ProcStatReader(statBefore.toPath());
+    after = new ProcStatReader(statAfter.toPath());
+    before.sample();
+    after.sample();
+    load.update(before);
+    load.update(after);
+    image = new CpuService.CpuImage(source.getLayout().getMaxColumns());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    before.close();
+    after.close();
+    source.close();
+  }
+
+  @Benchmark
+  public long[][] sampleProcStat() throws IOException {
+    after.sample();
+    return after.matrix();
+  }
+
+  @Benchmark
+  public CpuService.Cpu parseProcStat() {
+    return cpuService.cpu();
+  }
+
+  @Benchmark
+  public void computeCpuPercentages() {
+    // Alternate the two samples so every call sees a real delta
+    load.update(before);
+    load.update(after);
+  }
+
+  @Benchmark
+  public PanelFrame cpuImage() {
+    return cpuService.cpuImage(0, 2, image);
+  }
+}
@@ -0,0 +1,79 @@
+package david.i.am.panels;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Sample /proc and /sys files for the benchmarks, written to temp files so the
+ * services parse them through the same File-based code they use in production.
+ */
+final class Fixtures {
+
+  private Fixtures() {
+  }
+
+  /**
+   * Copies a fixture from src/jmh/resources/fixtures to a temp file.
+   */
+  static File resource(String name) throws IOException {
+    Path target = Files.createTempFile("panels-" + name, ".txt");
+    target.toFile().deleteOnExit();
+    try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+      if (in == null) {
+        throw new IOException("Missing fixture: " + name);
+      }
+      Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return target.toFile();
+  }
+
+  /**
+   * Writes a /proc/stat in the layout of a captured laptop sample, with one line per core.
+   * Counters are seeded from {@code seed} and {@code tick} advances them, so two calls with
+   * consecutive ticks give a plausible one-second delta.
+   */
+  static File procStat(int cores, long seed, int tick) throws IOException {
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder();
+    long[] total = new long[10];
+    StringBuilder coreLines = new StringBuilder();
+    for (int core = 0; core < cores; core++) {
+      long[] fields = new long[10];
+      for (int f = 0; f < fields.length; f++) {
+        long base = f == 3 ? 4_000_000L : f == 7 || f == 8 || f == 9 ? 0 : random.nextInt(400_000);
+        long rate = f == 3 ? 60 : f < 3 ? random.nextInt(40) : f == 7 || f == 8 || f == 9 ? 0 : random.nextInt(3);
+        fields[f] = base + rate * tick;
+        total[f] += fields[f];
+      }
+      coreLines.append("cpu").append(core);
+      appendFields(coreLines, fields);
+    }
+    sb.append("cpu ");
+    appendFields(sb, total);
+    sb.append(coreLines);
+    sb.append("intr 1082671245 9 0 0 0 0 0 0 0 1 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n");
+    sb.append("ctxt ").append(2_417_734_981L + 5_000L * tick).append('\n');
+    sb.append("btime 1760745392\n");
+    sb.append("processes ").append(1_282_345 + tick).append('\n');
+    sb.append("procs_running 3\n");
+    sb.append("procs_blocked 0\n");
+    sb.append("softirq 437284717 58 120918329 44 14209846 96285 0 1002178 183214508 2183 117841286\n");
+
+    Path target = Files.createTempFile("panels-stat-" + cores + "-", ".txt");
+    target.toFile().deleteOnExit();
+    Files.writeString(target, sb);
+    return target.toFile();
+  }
+
+  private static void appendFields(StringBuilder sb, long[] fields) {
+    for (long field : fields) {
+      sb.append(' ').append(field);
+    }
+    sb.append('\n');
+  }
+}
@@ -0,0 +1,60 @@
+package david.i.am.panels;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing /proc/meminfo and rendering the RAM bar.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RamServiceBenchmark {
+
+  private MeminfoReader reader;
+  private RamService ramService;
+
+  @Setup
+  public void setup() throws Exception {
+    File meminfo = Fixtures.resource("meminfo");
+    reader = new MeminfoReader(meminfo.toPath());
+    ramService = new RamService(new ProfileState(), new MeminfoSource(meminfo.toPath(), 1000));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    reader.close();
+  }
+
+  @Benchmark
+  public int sampleMeminfo() throws IOException {
+    reader.sample();
+    return reader.usedPercent();
+  }
+
+  @Benchmark
+  public RamService.Ram parseMeminfo() throws IOException {
+    reader.sample();
+    return RamService.toRam(reader);
+  }
+
+  @Benchmark
+  public PanelFrame ramImage() {
+    return ramService.ramImage(57);
+  }
+}
@@ -0,0 +1,47 @@
+package david.i.am.panels;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Picking one precompiled shimmer frame (nine greyscale columns plus the draw command)
+ * and handing it to a CommunicationCreator with no port, so only the render cost is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShimmerServiceBenchmark {
+
+  private ShimmerService shimmerService;
+  private CommunicationCreator noop;
+  private int position;
+
+  @Setup
+  public void setup() {
+    shimmerService = new ShimmerService(new ProfileState(), 20, 31);
+    noop = new CommunicationCreator(null, 0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    noop.close();
+  }
+
+  @Benchmark
+  public void shimmerFrame() {
+    noop.sendFrame(shimmerService.shimmerImage(position++, true));
+  }
+}
@@ -0,0 +1,64 @@
+package david.i.am.panels;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the battery uevent and /proc/net/wireless, and rendering both meters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WifiBatteryBenchmark {
+
+  private WifiBattery wifiBattery;
+  private File uevent;
+  private File wireless;
+  private WifiBattery.Battery battery;
+  private WifiBattery.Wifi wifi;
+  private DrawBuffer wirelessImage;
+
+  @Setup
+  public void setup() throws Exception {
+    uevent = Fixtures.resource("bat1-uevent");
+    wireless = Fixtures.resource("wireless");
+    wifiBattery = new WifiBattery(new ProfileState(),
+        new WirelessSource(wireless, 2000), new BatterySource(uevent, 30000));
+    battery = WifiBattery.battery(uevent);
+    wifi = WifiBattery.wireless(wireless);
+    wirelessImage = new DrawBuffer(41);
+  }
+
+  @Benchmark
+  public WifiBattery.Battery parseBattery() {
+    return WifiBattery.battery(uevent);
+  }
+
+  @Benchmark
+  public WifiBattery.Wifi parseWireless() {
+    return WifiBattery.wireless(wireless);
+  }
+
+  @Benchmark
+  public PanelFrame batteryImage() {
+    return wifiBattery.batteryImage(battery);
+  }
+
+  @Benchmark
+  public PanelFrame wirelessImage() {
+    return wifiBattery.wirelessImage(wifi, wirelessImage);
+  }
+}
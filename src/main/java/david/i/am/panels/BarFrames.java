@@ -0,0 +1,52 @@
+package david.i.am.panels;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Every frame a single-value bar image can show, packed once up front.
+ * <p>
+ * Images like the RAM and battery panels depend on one 0..100 value only, so
+ * there are at most 101 distinct frames. They are rendered and packed when the
+ * table is built; drawing one afterwards is an array lookup, with no rendering
+ * or packing per frame.
+ * <p>
+ * The frames are never modified after construction and can be shared by both
+ * panels and any thread: {@link CommunicationCreator#sendFrame} copies what it is given.
+ */
+final class BarFrames {
+
+    static final int VALUES = 101;
+
+    private final PanelFrame[] frames = new PanelFrame[VALUES];
+    private final PanelFrame empty = new PanelFrame(0, 0);
+
+    /**
+     * @param rowCount Number of 9-bit rows in the image.
+     * @param renderer Fills in the rows for a value in 0..100.
+     */
+    BarFrames(int rowCount, ObjIntConsumer<int[]> renderer) {
+        DrawBuffer image = new DrawBuffer(rowCount);
+        for (int value = 0; value < VALUES; value++) {
+            renderer.accept(image.rows(), value);
+            PanelFrame packed = image.pack();
+            PanelFrame frame = new PanelFrame(packed.length(), packed.packetCount());
+            frame.copyFrom(packed);
+            frames[value] = frame;
+        }
+    }
+
+    /**
+     * @param value Clamped to 0..100.
+     * @return the packed frame for {@code value}.
+     */
+    PanelFrame get(long value) {
+        return frames[(int) Math.max(0, Math.min(VALUES - 1, value))];
+    }
+
+    /**
+     * @return an empty frame, for when there is nothing to draw yet.
+     */
+    PanelFrame empty() {
+        return empty;
+    }
+}
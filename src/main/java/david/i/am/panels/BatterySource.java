@@ -0,0 +1,32 @@
+package david.i.am.panels;
+
+import java.io.File;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The BAT1 power_supply uevent, published as an immutable {@link WifiBattery.Battery}.
+ * Battery state moves on a scale of minutes, so the default interval is long.
+ */
+@Component
+public class BatterySource extends MetricSource<WifiBattery.Battery> {
+
+    private final File file;
+
+    @Autowired
+    public BatterySource(@Value("${panels.metrics.battery.refresh-ms:30000}") long refreshMs) {
+        this(new File(WifiBattery.POWER_SUPPLY_BAT_1_UEVENT), refreshMs);
+    }
+
+    BatterySource(File file, long refreshMs) {
+        super("battery", refreshMs, Set.of("wifibattery"));
+        this.file = file;
+    }
+
+    @Override
+    protected WifiBattery.Battery sample() {
+        return WifiBattery.battery(file);
+    }
+}
@@ -1,10 +1,23 @@
 package david.i.am.panels;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 public class BitUtils {
 
     private BitUtils(){}
+
+    /**
+     * @param count The number of 9-bit values to pack.
+     * @return the number of bytes needed to hold them.
+     */
+    public static int packedLength(int count) {
+        return (count * 9 + 7) / 8;
+    }
+
     /**
      * Packs a list of integers into a byte array, using 9 bits per integer.
      * This is a specific packing format used for drawing on panels.
@@ -36,4 +49,77 @@ public class BitUtils {
         }
         return buffer;
     }
+
+    /**
+     * Packs {@code count} integers, 9 bits each, into a caller-supplied array.
+     * Same format as {@link #packbits(List)}, without boxing or allocation.
+     *
+     * @param values     The integers to pack.
+     * @param offset     Index of the first integer in {@code values}.
+     * @param count      Number of integers to pack.
+     * @param dest       The array to pack into; the target range is overwritten.
+     * @param destOffset Index of the first byte to write in {@code dest}.
+     * @return the number of bytes written, {@link #packedLength(int)} of {@code count}.
+     */
+    public static int packbits(int[] values, int offset, int count, byte[] dest, int destOffset) {
+        final int length = packedLength(count);
+        final int end = destOffset + length;
+        Arrays.fill(dest, destOffset, end, (byte) 0);
+
+        int bitOffset = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int value = values[i] & 0x1FF;
+            int byteIndex = destOffset + (bitOffset >>> 3);
+            int bitInByte = bitOffset & 7;
+
+            dest[byteIndex] |= (byte) (value << bitInByte);
+            if (byteIndex + 1 < end) {
+                dest[byteIndex + 1] |= (byte) (value >> (8 - bitInByte));
+            }
+
+            bitOffset += 9;
+        }
+        return length;
+    }
+
+    /**
+     * Packs the remaining integers of {@code values}, 9 bits each, into {@code dest}
+     * starting at its position. Both buffers' positions are advanced past what was
+     * consumed and written.
+     *
+     * @return the number of bytes written.
+     * @throws BufferOverflowException if {@code dest} has too little room left.
+     */
+    public static int packbits(IntBuffer values, ByteBuffer dest) {
+        final int length = packedLength(values.remaining());
+        final int start = dest.position();
+        final int end = start + length;
+        if (end > dest.limit()) {
+            throw new BufferOverflowException();
+        }
+        if (dest.hasArray() && values.hasArray()) {
+            packbits(values.array(), values.arrayOffset() + values.position(), values.remaining(),
+                dest.array(), dest.arrayOffset() + start);
+        } else {
+            for (int i = start; i < end; i++) {
+                dest.put(i, (byte) 0);
+            }
+            int bitOffset = 0;
+            for (int i = values.position(); i < values.limit(); i++) {
+                int value = values.get(i) & 0x1FF;
+                int byteIndex = start + (bitOffset >>> 3);
+                int bitInByte = bitOffset & 7;
+
+                dest.put(byteIndex, (byte) (dest.get(byteIndex) | (value << bitInByte)));
+                if (byteIndex + 1 < end) {
+                    dest.put(byteIndex + 1, (byte) (dest.get(byteIndex + 1) | (value >> (8 - bitInByte))));
+                }
+
+                bitOffset += 9;
+            }
+        }
+        values.position(values.limit());
+        dest.position(end);
+        return length;
+    }
 }
@@ -0,0 +1,49 @@
+package david.i.am.panels;
+
+/**
+ * A profile that draws one logical canvas spread across however many panels are
+ * registered, rather than a left and a right picture.
+ * <p>
+ * {@link #show} may be called for different panels at the same time, each from its
+ * own render thread, but a given panel index is always drawn from the same thread.
+ * Per-panel scratch state indexed by panel therefore needs no locking. Animations
+ * advance in {@link #nextFrame()}, once per frame, so every panel draws the same step.
+ */
+public interface CanvasService extends PanelService {
+
+    /**
+     * Draws the part of the canvas on one panel.
+     *
+     * @param panel The panel to draw on.
+     * @param index The panel's position from the left, starting at 0.
+     * @param count The number of panels the canvas is spread across.
+     */
+    void show(CommunicationCreator panel, int index, int count);
+
+    /**
+     * Called once per frame, before any panel draws it, on the dispatching thread.
+     * Animation state that every panel draws from moves on here, rather than per
+     * panel, so panels that draw at different moments stay in step.
+     */
+    default void nextFrame() {
+        // nothing moves on by default
+    }
+
+    /**
+     * @return true if this profile draws on {@code panel} now: while it is the active
+     *         profile, and whenever the panel is one of its layers in the {@link Compositor}.
+     */
+    default boolean isShown(ProfileState profileState, CommunicationCreator panel) {
+        return panel instanceof LayerPanel || isActive(profileState);
+    }
+
+    @Override
+    default void showLeft(CommunicationCreator left) {
+        show(left, 0, 2);
+    }
+
+    @Override
+    default void showRight(CommunicationCreator right) {
+        show(right, 1, 2);
+    }
+}
@@ -1,65 +1,261 @@
 package david.i.am.panels;
-import com.fazecast.jSerialComm.SerialPort;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToDoubleFunction;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Owns the link to one panel (a {@link PanelTransport}, normally a serial port) and a
+ * dedicated writer thread for it.
+ * <p>
+ * The transport is opened on the writer thread, and the device is calibrated there once
+ * the first frame is out, so neither holds up startup. A transport that fails outright
+ * (an unplugged module) is dropped and reopened there too, with exponential backoff.
+ * Frames and commands submitted while the port is not open wait in the mailbox and the
+ * queue, so a replugged module shows the latest frame as soon as it is back.
+ * <p>
+ * Frames (DRAW packets and multi-packet greyscale uploads) go through a single-slot
+ * "latest frame wins" mailbox: a frame submitted while an earlier one is still waiting
+ * replaces it, so a congested port drops stale frames instead of queueing them.
+ * Control commands (brightness, sleep, version...) are queued in order and never dropped.
+ * Callers only ever copy bytes into the mailbox; all writes happen on the writer thread.
+ * <p>
+ * Replies are read by a {@link ResponseReader} on a reader thread of the port's own and
+ * come back through the futures {@link #query} returns, so writing never waits on reading;
+ * only a query right after a timeout waits for late replies to be thrown away.
+ * <p>
+ * A frame that is byte-identical to the last one written is skipped, unless the keepalive
+ * interval has passed since that write; the periodic resend repaints a replugged device.
+ * Greyscale frames go through a {@link GreyscaleEncoder}, which writes only the columns
+ * that changed since the last frame, as whichever packets are cheapest; a keepalive
+ * resend goes out in full.
+ * <p>
+ * Frame packets are spaced by a {@link LinkPacer}, calibrated against the device at startup,
+ * so multi-packet greyscale uploads go as fast as the firmware can take them without drops.
+ * A {@link FrameGovernor} turns the link's byte budget into the frame rate renderers
+ * should draw at; see {@link #isFrameDue()}.
+ * <p>
+ * Frames can be held in the mailbox with {@link #holdFrames()} and let go with
+ * {@link #releaseFrames()}, so that two ports present the frames of one dispatch together.
+ * <p>
+ * Bound to a {@link MeterRegistry}, the port reports its counters, write latency and
+ * link measurements tagged with the port name; the meters are registered once and the
+ * writer thread only bumps counters and records durations.
+ */
 @Slf4j
-public class CommunicationCreator {
+public class CommunicationCreator implements MeterBinder {
 
-    private static final byte[] HEADER = {(byte) 0x32, (byte) 0xAC}; // Fixed header for all commands
-    private final SerialPort serialPort;
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+    private static final long RESPONSE_TIMEOUT_MS = 500;
+    private static final int CALIBRATION_PACKETS = 9; // One greyscale frame's worth of columns
+    private static final int CALIBRATION_COLUMN_BYTES = 35; // Column index plus 34 rows
+    public static final long DEFAULT_KEEPALIVE_MS = 5000;
+    public static final double DEFAULT_MAX_FPS = 30;
+    public static final long DEFAULT_MAX_RECONNECT_DELAY_MS = 1000;
+    private static final int LAYER_BAUD_RATE = 115200; // layers never ask their governor for frames
+    private static final long MIN_RECONNECT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long DRAIN_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Callable<PanelTransport> opener;
+    private volatile PanelTransport transport;
+    @Getter
+    private final String portName;
+
+    private final Object mailboxLock = new Object();
+    private final PanelFrame pendingFrame = new PanelFrame(); // guarded by mailboxLock
+    private boolean framePending; // guarded by mailboxLock
+    private boolean framesHeld; // guarded by mailboxLock
+    private final PanelFrame writingFrame = new PanelFrame(); // writer thread only
+    private final PanelFrame lastWrittenFrame = new PanelFrame(); // writer thread only
+    private long lastWrittenNanos; // writer thread only
+    private final GreyscaleEncoder encoder = new GreyscaleEncoder(); // writer thread only
+    private final long keepaliveNanos;
+    private final BlockingQueue<Control> controlQueue = new LinkedBlockingQueue<>();
+    private final Semaphore wakeup = new Semaphore(0);
+    private final LinkPacer pacer = new LinkPacer();
+    private final FrameGovernor governor;
+    private final Thread writer;
+    private final ResponseReader responses; // null in no-op mode
+    private volatile boolean running;
+    private volatile boolean calibrationRequested;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private long nextConnectNanos; // writer thread only
+    private long reconnectDelayNanos = MIN_RECONNECT_DELAY_NANOS; // writer thread only
+    private volatile long maxReconnectDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_RECONNECT_DELAY_MS);
+    private boolean connectFailing; // writer thread only
+    private long connects; // writer thread only
+    private final CountDownLatch calibrated = new CountDownLatch(1);
+
+    private final AtomicLong framesSubmitted = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong framesSuperseded = new AtomicLong();
+    private final AtomicLong framesSuppressed = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong packetsWritten = new AtomicLong();
+    private final AtomicLong partialWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile Timer writeTimer;
+    private volatile long lastFrameWrittenNanos;
+    private volatile long firstFrameUptimeMs = -1;
+    private volatile FrameRecorder recorder;
 
     public CommunicationCreator(String portName, int baudRate) {
-        if (portName == null || portName.isEmpty()) {
-            this.serialPort = null;
+        this(portName, baudRate, DEFAULT_KEEPALIVE_MS);
+    }
+
+    /**
+     * @param keepaliveMs How long an unchanged frame is suppressed before it is resent anyway;
+     *                    zero or less disables suppression.
+     */
+    public CommunicationCreator(String portName, int baudRate, long keepaliveMs) {
+        this(portName, baudRate, keepaliveMs, DEFAULT_MAX_FPS);
+    }
+
+    /**
+     * Opens the named serial port; no port name gives a no-op instance that drops everything.
+     *
+     * @param maxFps Upper bound for the frame rate the governor grants, whatever the budget allows.
+     */
+    public CommunicationCreator(String portName, int baudRate, long keepaliveMs, double maxFps) {
+        this(portName, portName == null || portName.isEmpty()
+                ? null : () -> new SerialPortTransport(portName, baudRate, PanelTransport.DEFAULT_WRITE_TIMEOUT_MS),
+            baudRate, keepaliveMs, maxFps);
+    }
+
+    /**
+     * @param transport An open transport, or null for a no-op instance.
+     * @param baudRate  The link speed the frame budget is computed from.
+     */
+    public CommunicationCreator(PanelTransport transport, int baudRate, long keepaliveMs, double maxFps) {
+        this(transport != null ? transport.getName() : null, transport != null ? () -> transport : null,
+            baudRate, keepaliveMs, maxFps);
+    }
+
+    /**
+     * @param portName The port's name, for logs, thread names and meters.
+     * @param opener   Opens the transport, on the writer thread; null for a no-op instance.
+     *                 Called again, with backoff, until it succeeds, and whenever the
+     *                 transport fails outright.
+     * @param baudRate The link speed the frame budget is computed from.
+     */
+    public CommunicationCreator(String portName, Callable<PanelTransport> opener, int baudRate,
+                                long keepaliveMs, double maxFps) {
+        this.opener = opener;
+        this.portName = portName;
+        this.keepaliveNanos = TimeUnit.MILLISECONDS.toNanos(keepaliveMs);
+        this.governor = new FrameGovernor(baudRate, maxFps);
+        if (opener == null) {
+            this.writer = null;
+            this.responses = null;
             log.warn("CommunicationCreator initialized with no port (noop mode)");
             return;
         }
-        // Opens and configures the serial port
-        serialPort = SerialPort.getCommPort(portName);
-        serialPort.setComPortParameters(baudRate, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
-        // Set to non-blocking or semi-blocking to avoid "rush" effects from queued writes
-        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_NONBLOCKING, 0, 0);
 
-        if (!serialPort.openPort()) {
-            throw new IllegalStateException("Failed to open port: " + portName);
-        }
-        log.info("Serial Port {} opened at baud rate {}", portName, baudRate);
+        running = true;
+        responses = new ResponseReader(portName, () -> transport);
+        writer = new Thread(this::writeLoop, "panel-writer-" + portName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * For surfaces that are drawn on like a panel but write nowhere, such as the layers
+     * of the {@link Compositor}: no port and no threads; the subclass takes the frames.
+     */
+    protected CommunicationCreator(String name) {
+        this.opener = null;
+        this.portName = name;
+        this.keepaliveNanos = 0;
+        this.governor = new FrameGovernor(LAYER_BAUD_RATE, DEFAULT_MAX_FPS);
+        this.writer = null;
+        this.responses = null;
     }
 
     /**
-     * Sends a command packet over the serial connection.
+     * Queues a control command packet. Control commands are written in order,
+     * ahead of any pending frame, and are never superseded.
      *
      * @param command   The Command Enum value (1 byte).
      * @param payload   The payload (variable length, can be null).
      */
     public void sendCommand(CommandVals command, byte[] payload) {
-        if (serialPort == null || !serialPort.isOpen()) {
+        if (!isAccepting()) {
             return;
         }
-        byte commandId = command.getValue();
-
-        // Build the packet
-        int payloadLength = (payload != null ? payload.length : 0);
-        byte[] packet = new byte[3 + payloadLength]; // Header (2 bytes) + Command ID + Payload
-        packet[0] = HEADER[0]; // Header (byte 1)
-        packet[1] = HEADER[1]; // Header (byte 2)
-        packet[2] = commandId; // Command ID
+        controlQueue.add(new Control(command, packet(command, payload), null));
+        wakeup.release();
+    }
 
-        // Append payload data if available
-        if (payload != null) {
-            System.arraycopy(payload, 0, packet, 3, payloadLength);
+    /**
+     * Queues a command the device answers, such as VERSION or GAME_STATUS, in order
+     * with the other control commands. The caller is never blocked: the reply arrives
+     * through the future, read off the port by the panel's reader thread. Replies do not
+     * say what they answer and are matched to queries in order, so only use this for
+     * commands the device answers.
+     *
+     * @return the 32-byte reply. Fails with a {@link java.util.concurrent.TimeoutException}
+     *         if none arrives within {@value #RESPONSE_TIMEOUT_MS} ms of the command being
+     *         written, or with an {@link IllegalStateException} if it cannot be written.
+     *         A command queued while the port is not open waits for it, like any other.
+     */
+    public CompletableFuture<byte[]> query(CommandVals command, byte[] payload) {
+        if (!isAccepting()) {
+            return CompletableFuture.failedFuture(new IllegalStateException(portName + " is not open"));
         }
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        controlQueue.add(new Control(command, packet(command, payload), reply));
+        wakeup.release();
+        return reply;
+    }
 
-        // Send the packet over the serial port
-        int bytesWritten = serialPort.writeBytes(packet, packet.length);
-        if (bytesWritten < 0) {
-            log.error("Failed to write to serial port.");
-        } else if (bytesWritten < packet.length) {
-            log.warn("Partial write to serial port: {} of {} bytes", bytesWritten, packet.length);
+    /**
+     * @return the firmware version, e.g. "v0.1.9"; see {@link #query}.
+     */
+    public CompletableFuture<String> queryVersion() {
+        return query(CommandVals.VERSION, null).thenApply(CommunicationCreator::formatVersion);
+    }
+
+    /**
+     * Submits a frame to the mailbox. The frame is copied, so the caller may reuse
+     * it immediately. If the writer has not yet picked up the previously submitted
+     * frame, that frame is discarded in favour of this one.
+     *
+     * @param frame The packets making up the frame.
+     */
+    public void sendFrame(PanelFrame frame) {
+        if (!isAccepting() || frame.isEmpty()) {
+            return;
+        }
+        synchronized (mailboxLock) {
+            pendingFrame.copyFrom(frame);
+            markPending();
         }
+        governor.frameSubmitted(frame.length(), pacer.getMaxFrameRate(), System.nanoTime());
+        wakeup.release();
     }
 
     /**
@@ -71,27 +267,127 @@ public class CommunicationCreator {
         sendCommand(CommandVals.BRIGHTNESS, new byte[]{(byte) brightness});
     }
 
+    /**
+     * Turns the display on and requests calibration. Only the first call does anything,
+     * as a panel may be started both as a bean and by the {@link PanelRegistry} holding it.
+     */
     @PostConstruct
     public void postConstruct() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
         setDisplayOn();
-        getVersion();
+        // Calibrated by the writer once the first frame is out, so the first frame does not wait for it
+        calibrationRequested = true;
+    }
+
+    /**
+     * Waits for the calibration requested by {@link #postConstruct()} to finish, successfully or not.
+     *
+     * @return false if it did not finish in time.
+     */
+    boolean awaitCalibration(long timeoutMs) throws InterruptedException {
+        return calibrated.await(timeoutMs, TimeUnit.MILLISECONDS);
     }
 
-    private void getVersion() {
-        if (serialPort == null || !serialPort.isOpen()) {
+    /**
+     * Measures how fast the device absorbs frame packets and paces frames accordingly.
+     * <p>
+     * The firmware handles packets in order, so a VERSION request is answered only once
+     * everything written before it has been processed. The round trip of a bare request
+     * is compared with one sent straight behind a burst of staged greyscale columns; the
+     * difference is what the firmware needs for the burst. Staged columns are not shown
+     * until a DRAW_GREY_COL_BUFFER, so the display is not disturbed, but the staging
+     * buffer is: the next greyscale frame goes out in full. If the device does not
+     * answer, the default spacing is kept.
+     */
+    private void calibrate() {
+        if (!isConnected()) {
             return;
         }
-        sendCommand(CommandVals.VERSION, null);
-        byte[] response = read();
-        if (response.length >= 3) {
-            int major = (response[0] & 0xFF);
-            int minor = (response[1] & 0xF0) >> 4;
-            int patch = (response[1] & 0x0F);
-            boolean preRelease = (response[2] & 0x01) != 0;
-            log.info("Device Version: v{}.{}.{}{}", major, minor, patch, preRelease ? "-pre" : "");
-        } else {
-            log.warn("Received incomplete version information: {}", bytesToHex(response));
+        long idleStart = System.nanoTime();
+        byte[] version = requestVersion();
+        long idleRoundTrip = System.nanoTime() - idleStart;
+        if (version.length == 0) {
+            log.warn("No version reply from {}; keeping the default {} us packet spacing",
+                portName, pacer.getPacketSpacingNanos() / 1000);
+            return;
         }
+        log.info("Device Version: {}", formatVersion(version));
+
+        PanelFrame burst = new PanelFrame();
+        for (int col = 0; col < CALIBRATION_PACKETS; col++) {
+            int start = burst.reserve(CommandVals.STAGE_GREY_COL, CALIBRATION_COLUMN_BYTES);
+            burst.array()[start] = (byte) col;
+        }
+        encoder.invalidate(); // the burst stages blank columns over what the encoder staged
+        long burstStart = System.nanoTime();
+        for (int i = 0; i < burst.packetCount(); i++) {
+            // One write per packet, back to back, so each is recorded as a packet of its own
+            if (!write(burst.array(), burst.packetOffset(i), burst.packetLength(i))) {
+                return;
+            }
+        }
+        governor.controlWritten(burst.length(), System.nanoTime());
+        byte[] reply = requestVersion();
+        long burstRoundTrip = System.nanoTime() - burstStart;
+        if (reply.length == 0) {
+            log.warn("No reply from {} after a burst of {} packets; keeping the default {} us packet spacing",
+                portName, CALIBRATION_PACKETS, pacer.getPacketSpacingNanos() / 1000);
+            return;
+        }
+        pacer.calibrate(Math.max(0, burstRoundTrip - idleRoundTrip) / CALIBRATION_PACKETS);
+        log.info("Calibrated {}: {} us between frame packets (round trip {} us idle, {} us behind {} packets)",
+            portName, pacer.getPacketSpacingNanos() / 1000, idleRoundTrip / 1000, burstRoundTrip / 1000,
+            CALIBRATION_PACKETS);
+    }
+
+    /**
+     * Writes a VERSION request directly, rather than through the queue, and waits for the
+     * reply. Used by calibration only, which runs on the writer thread and times the reply.
+     *
+     * @return the reply, or an empty array if none arrived in time.
+     */
+    private byte[] requestVersion() {
+        byte[] request = packet(CommandVals.VERSION, null);
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        if (!writeQuery(CommandVals.VERSION, request, reply)) {
+            return new byte[0];
+        }
+        try {
+            return reply.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new byte[0];
+        } catch (ExecutionException | TimeoutException e) {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Writes a query, registered with the reader first so the reply cannot beat it.
+     *
+     * @return false if it could not be written; the reply has then failed.
+     */
+    private boolean writeQuery(CommandVals command, byte[] packet, CompletableFuture<byte[]> reply) {
+        ResponseReader.Expected expected = responses.expect(command, reply, RESPONSE_TIMEOUT_MS);
+        if (!write(packet, 0, packet.length)) {
+            responses.cancel(expected, new IllegalStateException("Could not write " + command + " to " + portName));
+            return false;
+        }
+        governor.controlWritten(packet.length, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * @return a VERSION reply as "v&lt;major&gt;.&lt;minor&gt;.&lt;patch&gt;", with "-pre" for a pre-release.
+     */
+    static String formatVersion(byte[] response) {
+        int major = (response[0] & 0xFF);
+        int minor = (response[1] & 0xF0) >> 4;
+        int patch = (response[1] & 0x0F);
+        boolean preRelease = (response[2] & 0x01) != 0;
+        return "v" + major + "." + minor + "." + patch + (preRelease ? "-pre" : "");
     }
 
     @PreDestroy
@@ -109,7 +405,525 @@ public class CommunicationCreator {
     }
 
     public void sendDraw(byte[] drawData) {
-        sendCommand(CommandVals.DRAW, drawData);
+        if (!isAccepting()) {
+            return;
+        }
+        int length;
+        synchronized (mailboxLock) {
+            length = pendingFrame.clear().add(CommandVals.DRAW, drawData).length();
+            markPending();
+        }
+        governor.frameSubmitted(length, pacer.getMaxFrameRate(), System.nanoTime());
+        wakeup.release();
+    }
+
+    /**
+     * Keeps submitted frames in the mailbox instead of writing them, until
+     * {@link #releaseFrames()}. A newer frame still replaces a held one; control
+     * commands are not held.
+     */
+    public void holdFrames() {
+        synchronized (mailboxLock) {
+            framesHeld = true;
+        }
+    }
+
+    /**
+     * Lets the writer pick up the pending frame, if any, straight away.
+     */
+    public void releaseFrames() {
+        synchronized (mailboxLock) {
+            framesHeld = false;
+        }
+        wakeup.release();
+    }
+
+    /**
+     * Caps the backoff between attempts to reopen the port; the first retry comes after 50 ms.
+     */
+    public void setMaxReconnectDelayMs(long maxReconnectDelayMs) {
+        this.maxReconnectDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(50, maxReconnectDelayMs));
+    }
+
+    /**
+     * @param greyStagingKept True if the firmware keeps its greyscale staging buffer after
+     *                        showing it, so columns that did not change need not be staged
+     *                        again; see {@link GreyscaleEncoder}.
+     */
+    public void setGreyStagingKept(boolean greyStagingKept) {
+        encoder.setStagingKept(greyStagingKept);
+    }
+
+    /**
+     * Records every packet written to this port from now on; null stops recording.
+     */
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    private void markPending() {
+        framesSubmitted.incrementAndGet();
+        if (framePending) {
+            framesSuperseded.incrementAndGet();
+            governor.frameSuperseded();
+        }
+        framePending = true;
+    }
+
+    public boolean isConnected() {
+        PanelTransport link = transport;
+        return link != null && link.isOpen();
+    }
+
+    /**
+     * @return true while frames and commands are taken: until close, whether the port is open or not.
+     */
+    private boolean isAccepting() {
+        return running;
+    }
+
+    /**
+     * Renderers call this before drawing and skip the frame if it returns false, so
+     * they never render more frames than the link can carry.
+     *
+     * @return true if the frame rate granted by the governor allows another frame now.
+     */
+    public boolean isFrameDue() {
+        if (governor.isFrameDue(System.nanoTime())) {
+            return true;
+        }
+        framesSkipped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Like {@link #isFrameDue()}, for schedulers: nothing is counted as skipped.
+     *
+     * @return how long until the governor allows another frame, 0 if it does now.
+     */
+    public long getNanosUntilFrameDue() {
+        return governor.nanosUntilFrameDue(System.nanoTime());
+    }
+
+    /**
+     * @return the frame rate currently granted on this port.
+     */
+    public double getTargetFps() {
+        return governor.targetFps(System.nanoTime());
+    }
+
+    /**
+     * @return the number of frames handed to {@link #sendDraw} or {@link #sendFrame}.
+     */
+    public long getFramesSubmitted() {
+        return framesSubmitted.get();
+    }
+
+    /**
+     * @return the number of frames fully written to the port.
+     */
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+     * @return the number of frames replaced in the mailbox before the writer got to them.
+     */
+    public long getFramesSuperseded() {
+        return framesSuperseded.get();
+    }
+
+    /**
+     * @return the number of frames skipped because they matched the last frame written.
+     */
+    public long getFramesSuppressed() {
+        return framesSuppressed.get();
+    }
+
+    /**
+     * @return the number of frames renderers skipped because {@link #isFrameDue()} said no.
+     */
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    /**
+     * @return the bytes written to the port, frames and control commands alike.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return frame bytes not written because the device already held what they would have set.
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return the packets written to the port, frames and control commands alike.
+     */
+    public long getPacketsWritten() {
+        return packetsWritten.get();
+    }
+
+    /**
+     * @return the writes the port took only part of.
+     */
+    public long getPartialWrites() {
+        return partialWrites.get();
+    }
+
+    /**
+     * @return the writes the port rejected outright.
+     */
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the last frame was fully written, 0 if none was.
+     */
+    public long getLastFrameWrittenNanos() {
+        return lastFrameWrittenNanos;
+    }
+
+    /**
+     * @return the number of times the port was reopened after failing.
+     */
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * @return milliseconds from JVM start until the first frame was fully written, -1 until then.
+     */
+    public long getTimeToFirstFrameMs() {
+        return firstFrameUptimeMs;
+    }
+
+    /**
+     * @return the current minimum time between the starts of two frame packets.
+     */
+    public long getPacketSpacingNanos() {
+        return pacer.getPacketSpacingNanos();
+    }
+
+    /**
+     * @return the measured rate at which frame packets drain to the device.
+     */
+    public double getLinkBytesPerSecond() {
+        return pacer.getBytesPerSecond();
+    }
+
+    /**
+     * @return the highest frame rate the link sustains for frames like the recent ones.
+     */
+    public double getMaxFrameRate() {
+        return pacer.getMaxFrameRate();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (writer == null) {
+            return;
+        }
+        Tags port = Tags.of("port", portName);
+        frameCounter(registry, port, "submitted", CommunicationCreator::getFramesSubmitted);
+        frameCounter(registry, port, "written", CommunicationCreator::getFramesWritten);
+        frameCounter(registry, port, "superseded", CommunicationCreator::getFramesSuperseded);
+        frameCounter(registry, port, "suppressed", CommunicationCreator::getFramesSuppressed);
+        frameCounter(registry, port, "skipped", CommunicationCreator::getFramesSkipped);
+        FunctionCounter.builder("panels.serial.bytes", this, CommunicationCreator::getBytesWritten)
+            .description("Bytes written to the panel").baseUnit("bytes").tags(port).register(registry);
+        FunctionCounter.builder("panels.serial.bytes.saved", this, CommunicationCreator::getBytesSaved)
+            .description("Frame bytes left out because the panel already held them").baseUnit("bytes")
+            .tags(port).register(registry);
+        FunctionCounter.builder("panels.serial.packets", this, CommunicationCreator::getPacketsWritten)
+            .description("Packets written to the panel").baseUnit("packets").tags(port).register(registry);
+        FunctionCounter.builder("panels.serial.writes.partial", this, CommunicationCreator::getPartialWrites)
+            .description("Writes the port took only part of").tags(port).register(registry);
+        FunctionCounter.builder("panels.serial.writes.failed", this, CommunicationCreator::getFailedWrites)
+            .description("Writes the port rejected").tags(port).register(registry);
+        FunctionCounter.builder("panels.serial.reconnects", this, CommunicationCreator::getReconnects)
+            .description("Times the port was reopened after failing").tags(port).register(registry);
+        responseCounter(registry, port, "answered", ResponseReader::getAnswered);
+        responseCounter(registry, port, "unsolicited", ResponseReader::getUnsolicited);
+        responseCounter(registry, port, "timeout", ResponseReader::getTimedOut);
+        Gauge.builder("panels.serial.packet.spacing", this, c -> c.getPacketSpacingNanos() / 1e9)
+            .description("Minimum time between the starts of two frame packets").baseUnit("seconds")
+            .tags(port).register(registry);
+        Gauge.builder("panels.serial.link.bytes.per.second", this, CommunicationCreator::getLinkBytesPerSecond)
+            .description("Measured rate at which frame packets drain to the device").tags(port).register(registry);
+        Gauge.builder("panels.frames.max.rate", this, CommunicationCreator::getMaxFrameRate)
+            .description("Highest frame rate the link sustains for recent frames").tags(port).register(registry);
+        Gauge.builder("panels.frames.target.rate", this, CommunicationCreator::getTargetFps)
+            .description("Frame rate currently granted by the governor").tags(port).register(registry);
+        Gauge.builder("panels.startup.first.frame", this,
+                c -> c.getTimeToFirstFrameMs() < 0 ? Double.NaN : c.getTimeToFirstFrameMs() / 1e3)
+            .description("Time from JVM start to the first frame written to the panel").baseUnit("seconds")
+            .tags(port).register(registry);
+        writeTimer = Timer.builder("panels.serial.write")
+            .description("Time the port takes to accept one write").tags(port).register(registry);
+    }
+
+    private void frameCounter(MeterRegistry registry, Tags port, String outcome,
+                              ToDoubleFunction<CommunicationCreator> count) {
+        FunctionCounter.builder("panels.frames", this, count)
+            .description("Frames by what became of them").tags(port).tag("outcome", outcome).register(registry);
+    }
+
+    private void responseCounter(MeterRegistry registry, Tags port, String outcome,
+                                 ToDoubleFunction<ResponseReader> count) {
+        FunctionCounter.builder("panels.serial.responses", responses, count)
+            .description("Device responses, and queries that got none").tags(port).tag("outcome", outcome)
+            .register(registry);
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                if (transport == null) {
+                    connect();
+                    continue;
+                }
+                wakeup.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            wakeup.drainPermits();
+            try {
+                drainControlQueue();
+                writePendingFrame();
+                if (calibrationRequested && framesWritten.get() > 0 && transport != null) {
+                    calibrationRequested = false;
+                    try {
+                        calibrate();
+                    } finally {
+                        calibrated.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error writing to serial port {}", portName, e);
+            }
+        }
+        // Flush whatever control commands (e.g. sleep) were queued before close
+        drainControlQueue();
+        Control unsent;
+        while ((unsent = controlQueue.poll()) != null) {
+            if (unsent.reply != null) {
+                unsent.reply.completeExceptionally(new IllegalStateException(portName + " is closed"));
+            }
+        }
+    }
+
+    /**
+     * Opens the transport once the backoff since the last failed attempt has passed;
+     * until then waits for it, or for close. Runs on the writer thread only, so
+     * renderers never wait on an open, and frames submitted meanwhile stay in the mailbox.
+     */
+    private void connect() throws InterruptedException {
+        long wait = nextConnectNanos - System.nanoTime();
+        if (wait > 0) {
+            wakeup.tryAcquire(wait, TimeUnit.NANOSECONDS);
+            return;
+        }
+        PanelTransport opened;
+        try {
+            opened = opener.call();
+        } catch (Exception e) {
+            if (!connectFailing) {
+                log.warn("Cannot open {}; retrying in the background", portName, e);
+                connectFailing = true;
+            } else {
+                log.debug("Still cannot open {}: {}", portName, e.getMessage());
+            }
+            nextConnectNanos = System.nanoTime() + reconnectDelayNanos;
+            reconnectDelayNanos = Math.min(maxReconnectDelayNanos, reconnectDelayNanos * 2);
+            return;
+        }
+        if (!running) {
+            opened.close(); // closed while opening
+            return;
+        }
+        transport = opened;
+        connectFailing = false;
+        reconnectDelayNanos = MIN_RECONNECT_DELAY_NANOS;
+        forgetDeviceState(); // a replugged module starts blank
+        if (connects++ == 0) {
+            log.info("{} open {} ms after JVM start", portName, ManagementFactory.getRuntimeMXBean().getUptime());
+        } else {
+            reconnects.incrementAndGet();
+            log.info("{} reconnected ({})", portName, opened.getName());
+        }
+        wakeup.release(); // write whatever waited while the port was closed
+    }
+
+    /**
+     * Drops a transport that failed outright, most likely unplugged, and reconnects
+     * straight away, then with backoff.
+     */
+    private void disconnect() {
+        PanelTransport link = transport;
+        transport = null;
+        nextConnectNanos = System.nanoTime();
+        if (link != null) {
+            log.warn("Lost {} ({}); reconnecting", portName, link.getName());
+            link.close();
+        }
+    }
+
+    private void drainControlQueue() {
+        Control control;
+        while (transport != null && (control = controlQueue.poll()) != null) {
+            if (control.reply == null && control.command != CommandVals.BRIGHTNESS) {
+                // Any command but brightness may change what the device shows; repaint on the next frame.
+                // Queries only read.
+                forgetDeviceState();
+            }
+            if (control.reply != null) {
+                writeQuery(control.command, control.packet, control.reply);
+            } else if (write(control.packet, 0, control.packet.length)) {
+                governor.controlWritten(control.packet.length, System.nanoTime());
+            }
+        }
+    }
+
+    private void writePendingFrame() throws InterruptedException {
+        synchronized (mailboxLock) {
+            if (!framePending || framesHeld) {
+                return;
+            }
+            writingFrame.copyFrom(pendingFrame);
+            framePending = false;
+        }
+        PanelFrame frame = writingFrame;
+        long now = System.nanoTime();
+        if (frame.contentEquals(lastWrittenFrame)) {
+            if (keepaliveNanos > 0 && now - lastWrittenNanos < keepaliveNanos) {
+                framesSuppressed.incrementAndGet();
+                return;
+            }
+            encoder.invalidate(); // a keepalive resend repaints in full
+        }
+        PanelFrame packets = encoder.encode(frame);
+        long frameStart = 0;
+        for (int i = 0; i < packets.packetCount(); i++) {
+            long start = pacer.awaitSlot();
+            if (i == 0) {
+                frameStart = start;
+            }
+            int length = packets.packetLength(i);
+            if (!write(packets.array(), packets.packetOffset(i), length)) {
+                forgetDeviceState();
+                if (transport == null) {
+                    requeue(frame);
+                    return;
+                }
+                pacer.backOff();
+                log.warn("Frame write to {} failed; packet spacing widened to {} us",
+                    portName, pacer.getPacketSpacingNanos() / 1000);
+                return;
+            }
+            pacer.packetWritten(length, start, awaitDrain(start));
+        }
+        long end = System.nanoTime();
+        pacer.frameWritten(frameStart, end);
+        governor.frameWritten(packets.length());
+        bytesSaved.addAndGet(frame.length() - packets.length());
+        lastFrameWrittenNanos = end;
+        if (firstFrameUptimeMs < 0) {
+            firstFrameUptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+            log.info("First frame on {} written {} ms after JVM start", portName, firstFrameUptimeMs);
+        }
+        lastWrittenFrame.copyFrom(frame);
+        lastWrittenNanos = now;
+        framesWritten.incrementAndGet();
+    }
+
+    /**
+     * The device may no longer show what was last written: the next frame is written, in full.
+     */
+    private void forgetDeviceState() {
+        lastWrittenFrame.clear();
+        encoder.invalidate();
+    }
+
+    /**
+     * Puts a frame that could not be written back in the mailbox, unless a newer one is there,
+     * so the module shows it as soon as it is back.
+     */
+    private void requeue(PanelFrame frame) {
+        synchronized (mailboxLock) {
+            if (!framePending) {
+                pendingFrame.copyFrom(frame);
+                framePending = true;
+            }
+        }
+    }
+
+    /**
+     * Waits for the driver's output queue to empty, so the next packet is paced from
+     * when this one actually left, but no longer than the widest packet spacing. The
+     * writer parks between checks rather than spin, so a panel does not hold a core.
+     *
+     * @return the time the queue drained (or the wait gave up).
+     */
+    private long awaitDrain(long startNanos) {
+        long deadline = startNanos + LinkPacer.MAX_PACKET_SPACING_NANOS;
+        long now = System.nanoTime();
+        PanelTransport link = transport;
+        while (link != null && link.bytesAwaitingWrite() > 0 && deadline - now > 0) {
+            LockSupport.parkNanos(Math.min(DRAIN_POLL_NANOS, deadline - now));
+            now = System.nanoTime();
+        }
+        return now;
+    }
+
+    private boolean write(byte[] buffer, int offset, int length) {
+        // Send the packet over the serial port
+        PanelTransport link = transport;
+        if (link == null) {
+            return false;
+        }
+        int written;
+        long start = System.nanoTime();
+        synchronized (link) {
+            written = link.write(buffer, offset, length);
+        }
+        Timer timer = writeTimer;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (written < 0) {
+            failedWrites.incrementAndGet();
+            log.error("Failed to write to serial port.");
+            disconnect();
+            return false;
+        } else if (written < length) {
+            partialWrites.incrementAndGet();
+            bytesWritten.addAndGet(written);
+            log.warn("Partial write to serial port: {} of {} bytes", written, length);
+            return false;
+        }
+        bytesWritten.addAndGet(length);
+        packetsWritten.incrementAndGet();
+        FrameRecorder frameRecorder = recorder;
+        if (frameRecorder != null) {
+            frameRecorder.record(portName, buffer, offset, length);
+        }
+        return true;
+    }
+
+    private static byte[] packet(CommandVals command, byte[] payload) {
+        PanelFrame frame = new PanelFrame(PanelFrame.HEADER_LENGTH + (payload != null ? payload.length : 0), 1);
+        frame.add(command, payload);
+        return frame.array();
     }
 
     // CommandVals enum translated to Java
@@ -153,46 +967,38 @@ public class CommunicationCreator {
      * Closes the serial connection.
      */
     public void close() {
-        if (serialPort == null) {
+        if (writer == null || !closed.compareAndSet(false, true)) {
             return;
         }
-        if (serialPort.closePort()) {
-            log.info("Serial port closed successfully.");
-        } else {
-            log.error("Failed to close the serial port.");
+        running = false;
+        wakeup.release();
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-    }
-
-    /**
-     * Helper function to convert a byte array to a Hex String (for debugging).
-     *
-     * @param bytes Byte array to convert.
-     * @return Hexadecimal representation of the byte array.
-     */
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X ", b));
+        if (writer.isAlive()) {
+            log.warn("Writer thread for {} did not stop within {} ms", portName, CLOSE_TIMEOUT_MS);
+        }
+        responses.close();
+        PanelTransport link = transport;
+        if (link != null) {
+            link.close();
         }
-        return sb.toString().trim();
     }
 
     /**
-     * Reads a 32-byte response from the serial port.
-     *
-     * @return A 32-byte array containing the response data.
+     * A queued control packet, and where its reply goes if the device answers it.
      */
-    public byte[] read() {
-        if (serialPort == null || !serialPort.isOpen()) {
-            return new byte[0];
-        }
-        byte[] data = new byte[32];
-        int bytesRead = serialPort.readBytes(data, data.length);
-        if (bytesRead < data.length) {
-            log.warn("Only read {} bytes from serial port, expected {}", bytesRead, data.length);
+    private static final class Control {
+        final CommandVals command;
+        final byte[] packet;
+        final CompletableFuture<byte[]> reply; // null when no reply is expected
+
+        Control(CommandVals command, byte[] packet, CompletableFuture<byte[]> reply) {
+            this.command = command;
+            this.packet = packet;
+            this.reply = reply;
         }
-        log.debug("Data received: {} bytes - {}", bytesRead, bytesToHex(data));
-        return data;
     }
-
 }
\ No newline at end of file
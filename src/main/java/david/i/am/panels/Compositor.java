@@ -0,0 +1,176 @@
+package david.i.am.panels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+/**
+ * The "composite" profile: several profiles on the panels at once, as layers.
+ * <p>
+ * Each layer's profile draws on a {@link LayerPanel} of its own instead of the real
+ * panel. Once per frame, the layers are blended bottom to top into a 9 x 34
+ * greyscale framebuffer per panel (see {@link Layer} for opacity, masks and
+ * regions), and only that is encoded and sent: one greyscale upload per panel and
+ * frame, whatever the number of layers. Without the compositor, two profiles would
+ * each write full frames and take turns on the panels.
+ * <p>
+ * Layers are listed bottom first in {@code panels.composite.layers}; each is set up
+ * through {@code panels.composite.<profile>.*}. Only profiles that draw a canvas can
+ * be layers.
+ */
+@Slf4j
+@Service
+public class Compositor implements CanvasService {
+
+    public static final String PROFILE = "composite";
+    private static final int COLUMNS = LayerPanel.COLUMNS;
+    private static final int ROWS = LayerPanel.ROWS;
+
+    private final ProfileState profileState;
+    private final List<Layer> layers;
+    private volatile Output[] outputs = new Output[0]; // one per panel, grown under outputsLock
+    private final Object outputsLock = new Object();
+
+    @Autowired
+    public Compositor(ProfileState profileState, List<CanvasService> services, Environment environment,
+                      @Value("${panels.composite.layers:}") String[] names) {
+        this(profileState, layers(services, environment, names));
+    }
+
+    Compositor(ProfileState profileState, List<Layer> layers) {
+        this.profileState = profileState;
+        this.layers = List.copyOf(layers);
+    }
+
+    private static List<Layer> layers(List<CanvasService> services, Environment environment, String[] names) {
+        List<Layer> layers = new ArrayList<>();
+        for (String name : names) {
+            String profile = name.trim();
+            if (profile.isEmpty()) {
+                continue;
+            }
+            if (profile.equals(PROFILE)) {
+                throw new IllegalArgumentException("The composite profile cannot be one of its own layers");
+            }
+            CanvasService service = services.stream()
+                .filter(candidate -> candidate.getProfileName().equals(profile))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No canvas profile " + profile + " to layer"));
+            String prefix = "panels.composite." + profile + ".";
+            Layer layer = new Layer(service, Integer.parseInt(environment.getProperty(prefix + "level", "255")));
+            layer.setOpacity(Integer.parseInt(environment.getProperty(prefix + "opacity", "255")));
+            layer.setBlackTransparent(Boolean.parseBoolean(environment.getProperty(prefix + "black-transparent", "false")));
+            String region = environment.getProperty(prefix + "region", "");
+            if (!region.isEmpty()) {
+                int[] area = Arrays.stream(region.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+                if (area.length != 4) {
+                    throw new IllegalArgumentException(prefix + "region is column,row,columns,rows, not " + region);
+                }
+                layer.setRegion(area[0], area[1], area[2], area[3]);
+            }
+            layers.add(layer);
+        }
+        log.info("Composite profile layers, bottom first: {}",
+            layers.stream().map(layer -> layer.getService().getProfileName()).toList());
+        return layers;
+    }
+
+    @Override
+    public String getProfileName() {
+        return PROFILE;
+    }
+
+    /**
+     * @return the brightness the brightest layer's profile asks for.
+     */
+    @Override
+    public int getBrightness() {
+        return layers.stream()
+            .mapToInt(layer -> layer.getService().getBrightness())
+            .max()
+            .orElse(CanvasService.super.getBrightness());
+    }
+
+    /**
+     * @return the layers, bottom first; their settings may be changed while running.
+     */
+    public List<Layer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * @return the profiles of the layers, bottom first.
+     */
+    public List<String> getLayerProfiles() {
+        return layers.stream().map(layer -> layer.getService().getProfileName()).toList();
+    }
+
+    @Override
+    public void nextFrame() {
+        for (Layer layer : layers) {
+            layer.getService().nextFrame();
+        }
+    }
+
+    @Override
+    public void show(CommunicationCreator panel, int index, int count) {
+        if (!isShown(profileState, panel) || !panel.isFrameDue()) {
+            return;
+        }
+        panel.sendFrame(compose(index, count));
+    }
+
+    /**
+     * Lets every layer draw its part of panel {@code index}, blends them, and encodes
+     * the result as a greyscale upload.
+     */
+    PanelFrame compose(int index, int count) {
+        Output output = output(index);
+        byte[] levels = output.levels;
+        Arrays.fill(levels, (byte) 0);
+        for (Layer layer : layers) {
+            layer.render(index, count);
+            layer.blendOnto(index, levels);
+        }
+        PanelFrame frame = output.frame.clear();
+        for (int column = 0; column < COLUMNS; column++) {
+            int start = frame.reserve(CommunicationCreator.CommandVals.STAGE_GREY_COL, ROWS + 1);
+            frame.array()[start] = (byte) column; // The first byte is the column index
+            System.arraycopy(levels, column * ROWS, frame.array(), start + 1, ROWS);
+        }
+        frame.reserve(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, 0);
+        return frame;
+    }
+
+    private Output output(int index) {
+        Output[] current = outputs;
+        if (index < current.length) {
+            return current[index];
+        }
+        synchronized (outputsLock) {
+            current = outputs;
+            if (index >= current.length) {
+                Output[] grown = Arrays.copyOf(current, index + 1);
+                for (int i = current.length; i < grown.length; i++) {
+                    grown[i] = new Output();
+                }
+                outputs = current = grown;
+            }
+            return current[index];
+        }
+    }
+
+    /**
+     * Per-panel scratch: the framebuffer and the frame it is encoded into.
+     */
+    private static final class Output {
+        private final byte[] levels = new byte[COLUMNS * ROWS];
+        private final PanelFrame frame = new PanelFrame(
+            (PanelFrame.HEADER_LENGTH + ROWS + 1) * COLUMNS + PanelFrame.HEADER_LENGTH, COLUMNS + 1);
+    }
+}
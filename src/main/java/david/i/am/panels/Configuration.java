@@ -1,24 +1,126 @@
 package david.i.am.panels;
 
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 public class Configuration {
-  @Bean("left")
-  public CommunicationCreator left() {
-    try {
-      return new CommunicationCreator("/dev/ttyACM1", 115200);
-    } catch (Exception e) {
-      return new CommunicationCreator(null, 0);
+  private static final int BAUD_RATE = 115200;
+
+  @Value("${panels.serial.keepalive-ms:" + CommunicationCreator.DEFAULT_KEEPALIVE_MS + "}")
+  private long keepaliveMs;
+  @Value("${panels.serial.max-fps:" + CommunicationCreator.DEFAULT_MAX_FPS + "}")
+  private double maxFps;
+  // serial, fake (in-memory device, no hardware needed) or pty
+  @Value("${panels.transport.type:serial}")
+  private String transportType;
+  // The panels, left to right; each name configures its own module below. One or more.
+  @Value("${panels.names:left,right}")
+  private String[] names;
+  // Modules are found by USB ids, and told apart by serial number when one is set
+  // (panels.<name>.serial-number); without one, they are taken in the order of the
+  // USB ports they sit in, once all are plugged in. The device paths (panels.<name>.device) are used when no port reports
+  // the ids; pty paths are panels.transport.pty.<name>.
+  @Value("${panels.usb.vendor-id:0x32AC}")
+  private String vendorId;
+  @Value("${panels.usb.product-id:0x0020}")
+  private String productId;
+  @Value("${panels.serial.reconnect-max-ms:" + CommunicationCreator.DEFAULT_MAX_RECONNECT_DELAY_MS + "}")
+  private long reconnectMaxMs;
+  // Set if the firmware keeps its greyscale staging buffer after drawing it; unset, only
+  // black columns are left unstaged in greyscale frames
+  @Value("${panels.serial.grey-staging-kept:false}")
+  private boolean greyStagingKept;
+  // Binary log of every packet written to any panel; empty to not record
+  @Value("${panels.record.file:}")
+  private String recordFile;
+  private FrameRecorder recorder; // shared by all panels, opened with the first one
+
+  private final Environment environment;
+
+  public Configuration(Environment environment) {
+    this.environment = environment;
+  }
+
+  @Bean
+  public PanelRegistry panels() {
+    UsbPortFinder finder = new UsbPortFinder(Integer.decode(vendorId), Integer.decode(productId), names.length);
+    for (int position = 0; position < names.length; position++) {
+      finder.pin(position, environment.getProperty("panels." + names[position].trim() + ".serial-number", ""));
+    }
+    List<CommunicationCreator> panels = new ArrayList<>();
+    for (int position = 0; position < names.length; position++) {
+      String name = names[position].trim();
+      panels.add(panel(finder, name,
+          environment.getProperty("panels." + name + ".serial-number", ""),
+          position,
+          environment.getProperty("panels." + name + ".device", defaultDevice(name, position)),
+          environment.getProperty("panels.transport.pty." + name, "")));
     }
+    return new PanelRegistry(panels);
+  }
+
+  // The two-panel beans, for what draws a left and a right picture; with a single
+  // module, right is a no-op panel that drops everything.
+  @Bean("left")
+  public CommunicationCreator left(PanelRegistry panels) {
+    return panels.get(0);
   }
   @Bean("right")
-  public CommunicationCreator right() {
-    try {
-      return new CommunicationCreator("/dev/ttyACM0", 115200);
-    } catch (Exception e) {
-      return new CommunicationCreator(null, 0);
+  public CommunicationCreator right(PanelRegistry panels) {
+    return panels.size() > 1 ? panels.get(1) : new CommunicationCreator(null, BAUD_RATE);
+  }
+
+  private static String defaultDevice(String name, int position) {
+    return switch (name) {
+      case "left" -> "/dev/ttyACM1";
+      case "right" -> "/dev/ttyACM0";
+      default -> "/dev/ttyACM" + position;
+    };
+  }
+
+  private CommunicationCreator panel(UsbPortFinder finder, String name, String serialNumber, int position,
+                                     String device, String pty) {
+    // Opened, and reopened after an unplug, on the panel's writer thread, so rendering never waits for it.
+    // The module is looked up again on every attempt, as a replugged one may come back as another ttyACM.
+    CommunicationCreator panel = new CommunicationCreator(name,
+        () -> switch (transportType) {
+          case "fake" -> new FakePanelTransport(name, BAUD_RATE);
+          case "pty" -> new PtyTransport(Path.of(pty));
+          default -> new SerialPortTransport(finder.find(serialNumber, position, device), BAUD_RATE,
+              PanelTransport.DEFAULT_WRITE_TIMEOUT_MS);
+        }, BAUD_RATE, keepaliveMs, maxFps);
+    panel.setMaxReconnectDelayMs(reconnectMaxMs);
+    panel.setGreyStagingKept(greyStagingKept);
+    panel.setRecorder(recorder());
+    return panel;
+  }
+
+  private synchronized FrameRecorder recorder() {
+    if (recorder == null && !recordFile.isEmpty()) {
+      try {
+        recorder = new FrameRecorder(Path.of(recordFile));
+      } catch (IOException e) {
+        log.error("Cannot record to {}; running without recording", recordFile, e);
+        recordFile = "";
+      }
+    }
+    return recorder;
+  }
+
+  @PreDestroy
+  public synchronized void closeRecorder() throws IOException {
+    if (recorder != null) {
+      recorder.close();
     }
   }
 }
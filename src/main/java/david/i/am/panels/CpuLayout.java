@@ -0,0 +1,149 @@
+package david.i.am.panels;
+
+import java.util.Arrays;
+
+/**
+ * Maps any number of cores onto the columns the panels have (9 per panel).
+ * <p>
+ * The reduction runs once per sample on the sampling thread, in single passes over
+ * the flat percentage table, so the per-frame render cost depends only on the
+ * number of columns, never on the number of cores. Output is laid out as
+ * {@code columns[c * 2] = user%}, {@code columns[c * 2 + 1] = system%}.
+ */
+public class CpuLayout {
+
+    public static final int COLUMNS_PER_PANEL = 9;
+
+    public enum Mode {
+        /** One column per core; cores beyond the available columns are not shown. */
+        ONE_TO_ONE,
+        /** Cores are split into contiguous groups, each column shows the busiest value of its group. */
+        MAX,
+        /** Cores are split into contiguous groups, each column shows the average of its group. */
+        MEAN,
+        /** The busiest cores by user + system time, busiest first. */
+        BUSIEST
+    }
+
+    private static final int USER = ProcStatReader.USER;
+    private static final int SYSTEM = ProcStatReader.SYSTEM;
+
+    private final Mode mode;
+    private final int maxColumns;
+
+    private int cores = -1;
+    private int columns;
+    private int[] coreToColumn = new int[0];
+    private int[] groupSize = new int[0];
+    private int[] sums = new int[0];
+    private int[] busy = new int[0];
+    private int[] order = new int[0];
+
+    public CpuLayout(Mode mode, int maxColumns) {
+        this.mode = mode;
+        this.maxColumns = maxColumns;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getMaxColumns() {
+        return maxColumns;
+    }
+
+    /**
+     * Precomputes the core to column mapping. Called once at startup with the discovered
+     * core count, and again by {@link #reduce} only if the count changes (CPU hotplug).
+     *
+     * @return the number of columns the cores map onto.
+     */
+    public int configure(int coreCount) {
+        cores = coreCount;
+        columns = Math.min(coreCount, maxColumns);
+        coreToColumn = new int[coreCount];
+        groupSize = new int[columns];
+        sums = new int[columns * 2];
+        busy = new int[coreCount];
+        order = new int[coreCount];
+        for (int core = 0; core < coreCount; core++) {
+            int column = mode == Mode.ONE_TO_ONE ? core : (int) ((long) core * columns / coreCount);
+            coreToColumn[core] = column < columns ? column : -1;
+            if (column < columns) {
+                groupSize[column]++;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Reduces a {@link CpuLoad} table to per-column user and system percentages.
+     *
+     * @param table   Percentages as {@code table[row * FIELDS + field]}; row 0 is the aggregate.
+     * @param rows    Number of valid rows in {@code table}.
+     * @param out     Destination, at least {@code 2 * maxColumns} long.
+     * @return the number of columns written.
+     */
+    public int reduce(short[] table, int rows, short[] out) {
+        int coreCount = rows - 1;
+        if (coreCount != cores) {
+            configure(coreCount);
+        }
+        switch (mode) {
+            case ONE_TO_ONE, MAX -> reduceMax(table);
+            case MEAN -> reduceMean(table);
+            case BUSIEST -> reduceBusiest(table);
+        }
+        for (int i = 0; i < columns * 2; i++) {
+            out[i] = (short) sums[i];
+        }
+        return columns;
+    }
+
+    private void reduceMax(short[] table) {
+        Arrays.fill(sums, 0, columns * 2, 0);
+        for (int core = 0, offset = CpuLoad.FIELDS; core < cores; core++, offset += CpuLoad.FIELDS) {
+            int column = coreToColumn[core];
+            if (column >= 0) {
+                sums[column * 2] = Math.max(sums[column * 2], table[offset + USER]);
+                sums[column * 2 + 1] = Math.max(sums[column * 2 + 1], table[offset + SYSTEM]);
+            }
+        }
+    }
+
+    private void reduceMean(short[] table) {
+        Arrays.fill(sums, 0, columns * 2, 0);
+        for (int core = 0, offset = CpuLoad.FIELDS; core < cores; core++, offset += CpuLoad.FIELDS) {
+            int column = coreToColumn[core];
+            sums[column * 2] += table[offset + USER];
+            sums[column * 2 + 1] += table[offset + SYSTEM];
+        }
+        for (int column = 0; column < columns; column++) {
+            sums[column * 2] /= groupSize[column];
+            sums[column * 2 + 1] /= groupSize[column];
+        }
+    }
+
+    private void reduceBusiest(short[] table) {
+        for (int core = 0, offset = CpuLoad.FIELDS; core < cores; core++, offset += CpuLoad.FIELDS) {
+            busy[core] = table[offset + USER] + table[offset + SYSTEM];
+            order[core] = core;
+        }
+        // Partial selection sort: only the first `columns` places are needed
+        for (int place = 0; place < columns; place++) {
+            int best = place;
+            for (int i = place + 1; i < cores; i++) {
+                if (busy[order[i]] > busy[order[best]]) {
+                    best = i;
+                }
+            }
+            int swap = order[place];
+            order[place] = order[best];
+            order[best] = swap;
+
+            int offset = (order[place] + 1) * CpuLoad.FIELDS;
+            sums[place * 2] = table[offset + USER];
+            sums[place * 2 + 1] = table[offset + SYSTEM];
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package david.i.am.panels;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Turns successive {@link ProcStatReader} samples into per-core percentages
+ * without allocating.
+ * <p>
+ * Two {@code long[rows][FIELDS]} snapshots are swapped every tick: the new sample is
+ * copied into one, the deltas against the other are written as whole percentages
+ * into a flat {@code short[rows * FIELDS]} table. Row 0 is the aggregate, rows 1..n
+ * the cores in file order, published with their ids. When the set of cores changes (one goes offline or comes
+ * back), rows no longer line up with the previous sample, so the deltas start over.
+ * <p>
+ * There is one writer (the sampling thread) and any number of readers. The table is
+ * published through a sequence number (a seqlock): the writer makes it odd while
+ * updating and even when done, and {@link #read} retries until it copies a table
+ * that did not change underneath it. Readers never block the writer and never lock.
+ * <p>
+ * Each update also reduces the table to display columns through a {@link CpuLayout},
+ * published under the same sequence number, so renderers read at most
+ * {@code 2 * maxColumns} values whatever the core count.
+ */
+public class CpuLoad {
+
+    public static final int FIELDS = ProcStatReader.FIELDS;
+
+    private long[][] previous = new long[0][];
+    private long[][] current = new long[0][];
+    private boolean primed; // writer only: previous holds a sample
+    private int[] primedCoreIds = new int[0]; // writer only: the cores previous holds, in row order
+
+    private short[] percent = new short[0];
+    private int[] coreIds = new int[0]; // published: the core of each row after the aggregate
+    private int rows; // published rows, 0 until two samples have been seen
+    private final CpuLayout layout;
+    private final short[] columnTable;
+    private int columns; // published columns
+    private volatile long sequence;
+
+    public CpuLoad(CpuLayout layout) {
+        this.layout = layout;
+        this.columnTable = new short[layout.getMaxColumns() * 2];
+    }
+
+    /**
+     * Folds a new sample into the table. Must only be called from one thread.
+     */
+    public void update(ProcStatReader stat) {
+        int sampleRows = stat.coreCount() + 1;
+        if (current.length < sampleRows) {
+            // Cores came online (or first sample): buffers that fit
+            current = newMatrix(sampleRows);
+            previous = newMatrix(sampleRows);
+            primed = false;
+        }
+        if (!sameCores(stat)) {
+            // Rows now hold other cores than last time: diffing them would mix cores up
+            primedCoreIds = new int[stat.coreCount()];
+            for (int core = 0; core < primedCoreIds.length; core++) {
+                primedCoreIds[core] = stat.coreId(core);
+            }
+            primed = false;
+        }
+        long[][] matrix = stat.matrix();
+        for (int row = 0; row < sampleRows; row++) {
+            System.arraycopy(matrix[row], 0, current[row], 0, FIELDS);
+        }
+
+        if (primed) {
+            publish(sampleRows);
+        }
+
+        long[][] swap = previous;
+        previous = current;
+        current = swap;
+        primed = true;
+    }
+
+    /**
+     * Withdraws the table and forgets the previous sample, so the next update is only
+     * a baseline. Must only be called from the updating thread.
+     */
+    public void reset() {
+        primed = false;
+        long seq = sequence;
+        sequence = seq + 1;
+        VarHandle.storeStoreFence();
+        rows = 0;
+        columns = 0;
+        sequence = seq + 2;
+    }
+
+    /**
+     * @return true if a table has been published since the start or the last {@link #reset()}.
+     *         Only meaningful on the updating thread.
+     */
+    public boolean isPublished() {
+        return rows > 0;
+    }
+
+    private boolean sameCores(ProcStatReader stat) {
+        if (stat.coreCount() != primedCoreIds.length) {
+            return false;
+        }
+        for (int core = 0; core < primedCoreIds.length; core++) {
+            if (stat.coreId(core) != primedCoreIds[core]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void publish(int sampleRows) {
+        long seq = sequence;
+        sequence = seq + 1; // odd: update in progress
+        VarHandle.storeStoreFence();
+
+        if (percent.length < sampleRows * FIELDS) {
+            percent = new short[sampleRows * FIELDS];
+        }
+        for (int row = 0; row < sampleRows; row++) {
+            computeRow(previous[row], current[row], percent, row * FIELDS);
+        }
+        coreIds = primedCoreIds; // replaced, never changed, when the cores change
+        rows = sampleRows;
+        columns = layout.reduce(percent, sampleRows, columnTable);
+
+        sequence = seq + 2; // even: stable
+    }
+
+    private static void computeRow(long[] before, long[] after, short[] out, int offset) {
+        long totalDelta = 0;
+        for (int field = 0; field <= ProcStatReader.SOFTIRQ; field++) {
+            totalDelta += after[field] - before[field];
+        }
+        for (int field = 0; field < FIELDS; field++) {
+            long delta = after[field] - before[field];
+            out[offset + field] = totalDelta > 0 ? (short) (delta * 100 / totalDelta) : 0;
+        }
+    }
+
+    /**
+     * Copies the latest table into {@code dest}, laid out as {@code dest[row * FIELDS + field]}.
+     * Rows that do not fit in {@code dest} are left out.
+     *
+     * @return the number of rows copied, aggregate row included; 0 if no percentages exist yet.
+     */
+    public int read(short[] dest) {
+        return read(dest, null);
+    }
+
+    /**
+     * As {@link #read(short[])}, also copying which core each row holds: row {@code r}
+     * is {@code cpu<coreIds[r - 1]>} of /proc/stat. Cores go offline, so the ids need not
+     * match the rows.
+     *
+     * @param coreIds At least as long as the rows copied, less one; null to skip the ids.
+     */
+    public int read(short[] dest, int[] coreIds) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            short[] table = percent;
+            int copied = Math.min(rows, dest.length / FIELDS);
+            System.arraycopy(table, 0, dest, 0, Math.min(copied * FIELDS, table.length));
+            if (coreIds != null && copied > 0) {
+                int[] ids = this.coreIds;
+                System.arraycopy(ids, 0, coreIds, 0, Math.min(copied - 1, Math.min(ids.length, coreIds.length)));
+            }
+            VarHandle.loadLoadFence();
+            if (sequence == before) {
+                return copied;
+            }
+        }
+    }
+
+    /**
+     * Copies the latest per-column user and system percentages into {@code dest},
+     * laid out as {@code dest[column * 2]} (user) and {@code dest[column * 2 + 1]} (system).
+     *
+     * @param dest At least {@code 2 * maxColumns} long.
+     * @return the number of columns copied; 0 if no percentages exist yet.
+     */
+    public int readColumns(short[] dest) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int copied = rows == 0 ? 0 : columns;
+            System.arraycopy(columnTable, 0, dest, 0, copied * 2);
+            VarHandle.loadLoadFence();
+            if (sequence == before) {
+                return copied;
+            }
+        }
+    }
+
+    /**
+     * @return the size a {@link #read} destination needs to hold every row right now.
+     */
+    public int length() {
+        return percent.length;
+    }
+
+    /**
+     * @return a number that changes every time a new table is published.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    private static long[][] newMatrix(int rows) {
+        return new long[rows][FIELDS];
+    }
+}
@@ -1,42 +1,39 @@
 package david.i.am.panels;
 
-import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
-import java.io.File;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Singular;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 @Service
-public class CpuService implements PanelService {
+public class CpuService implements CanvasService {
   public static final String PROC_STAT = "/proc/stat";
 
+  private static final int[] FRAME_DATA = {
+      0b111111111, // Top border
+      0b100000001, // Frame
+      0b100000001,
+      0b101010101, // Decorative pattern
+      0b111111111, // Bottom border
+      0b000000000, // Space padding
+      0b000000000  // Space padding
+  };
+  private static final int BAR_ROWS = 34;
+
   private final ProfileState profileState;
+  private final ProcStatSource procStat;
+  private volatile CpuImage[] images = new CpuImage[0]; // one per panel, grown under imagesLock
+  private final Object imagesLock = new Object();
 
-  public CpuService(ProfileState profileState) {
+  public CpuService(ProfileState profileState, ProcStatSource procStat) {
     this.profileState = profileState;
+    this.procStat = procStat;
   }
 
-  // Field to store derivative CPU stats (derived percentages)
-  private final AtomicReference<Cpu> cpuPercentageStats = new AtomicReference<>();
-
-  @PostConstruct
-  void init() {
-    // nothing to do here
-  }
-
-  @PreDestroy
-  void destroy() {
-    // nothing needed here
-  }
+  private Cpu percentageView; // guarded by this
+  private long percentageViewSequence; // guarded by this
 
   @Override
   public String getProfileName() {
@@ -44,15 +41,31 @@ public class CpuService implements PanelService {
   }
 
   @Override
-  public void showLeft(CommunicationCreator left) {
-    left.sendDraw(cpuImageForRange("cpu0-7"));
+  public void show(CommunicationCreator panel, int index, int count) {
+    if (!isShown(profileState, panel) || !panel.isFrameDue()) {
+      return;
+    }
+    panel.sendFrame(cpuImage(index, count, image(index)));
   }
 
-  @Override
-  public void showRight(CommunicationCreator right) {
-    right.sendDraw(cpuImageForRange("cpu8-15"));
+  private CpuImage image(int index) {
+    CpuImage[] current = images;
+    if (index < current.length) {
+      return current[index];
+    }
+    synchronized (imagesLock) {
+      current = images;
+      if (index >= current.length) {
+        CpuImage[] grown = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i < grown.length; i++) {
+          grown[i] = new CpuImage(procStat.getLayout().getMaxColumns());
+        }
+        images = current = grown;
+      }
+      return current[index];
+    }
   }
-  
+
 
   @Builder
   @Getter
@@ -90,211 +103,142 @@ public class CpuService implements PanelService {
 
   }
 
+  /**
+   * Reads the raw counters afresh, through the sampler's reader; the panels use the sampled
+   * {@link ProcStatSource} load instead.
+   */
   public Cpu cpu() {
-    File statsFile = new File(PROC_STAT);
-    Cpu.CpuBuilder builder = Cpu.builder();
-
-    try (Scanner scanner = new Scanner(statsFile)) {
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-
-        if (line.startsWith("cpu ")) {
-          // Total CPU stats (summed across all CPUs)
-          String[] parts = line.split("\\s+");
-          builder.totalUserTime(Long.parseLong(parts[1]))
-              .totalNiceTime(Long.parseLong(parts[2]))
-              .totalSystemTime(Long.parseLong(parts[3]))
-              .totalIdleTime(Long.parseLong(parts[4]))
-              .totalIowaitTime(Long.parseLong(parts[5]))
-              .totalIrqTime(Long.parseLong(parts[6]))
-              .totalSoftirqTime(Long.parseLong(parts[7]));
-        } else if (line.startsWith("cpu") && !line.startsWith("cpu ")) {
-          // Per-core CPU stats (e.g., cpu0, cpu1, etc.)
-          String[] parts = line.split("\\s+");
-          Cpu.CoreStats coreStats = Cpu.CoreStats.builder()
-              .userTime(Long.parseLong(parts[1]))
-              .niceTime(Long.parseLong(parts[2]))
-              .systemTime(Long.parseLong(parts[3]))
-              .idleTime(Long.parseLong(parts[4]))
-              .iowaitTime(Long.parseLong(parts[5]))
-              .irqTime(Long.parseLong(parts[6]))
-              .softirqTime(Long.parseLong(parts[7]))
-              .build();
-          builder.coreStat(parts[0], coreStats); // parts[0] = "cpu0", "cpu1", etc.
-        } else if (line.startsWith("intr")) {
-          // Total interrupts
-          String[] parts = line.split("\\s+");
-          builder.totalInterrupts(Long.parseLong(parts[1]));
-        } else if (line.startsWith("ctxt")) {
-          // Context switches
-          builder.totalContextSwitches(Long.parseLong(line.split("\\s+")[1]));
-        } else if (line.startsWith("btime")) {
-          // Boot time
-          builder.bootTime(Long.parseLong(line.split("\\s+")[1]));
-        } else if (line.startsWith("processes")) {
-          // Total number of processes
-          builder.totalProcesses(Long.parseLong(line.split("\\s+")[1]));
-        } else if (line.startsWith("procs_running")) {
-          // Total number of running processes
-          builder.runningProcesses(Long.parseLong(line.split("\\s+")[1]));
-        } else if (line.startsWith("procs_blocked")) {
-          // Total number of blocked processes
-          builder.blockedProcesses(Long.parseLong(line.split("\\s+")[1]));
-        }
-      }
+    try {
+      return procStat.readCounters(this::toCpu);
     } catch (Exception e) {
-      throw new ParseError("Failed to parse stats file: " + statsFile.getAbsolutePath(), e);
+      throw new ParseError("Failed to parse stats file: " + PROC_STAT, e);
     }
+  }
 
-    // Build and return the Cpu object
+  private Cpu toCpu(ProcStatReader stat) {
+    long[] total = stat.total();
+    Cpu.CpuBuilder builder = Cpu.builder()
+        .totalUserTime(total[ProcStatReader.USER])
+        .totalNiceTime(total[ProcStatReader.NICE])
+        .totalSystemTime(total[ProcStatReader.SYSTEM])
+        .totalIdleTime(total[ProcStatReader.IDLE])
+        .totalIowaitTime(total[ProcStatReader.IOWAIT])
+        .totalIrqTime(total[ProcStatReader.IRQ])
+        .totalSoftirqTime(total[ProcStatReader.SOFTIRQ])
+        .totalInterrupts(stat.interrupts())
+        .totalContextSwitches(stat.contextSwitches())
+        .bootTime(stat.bootTime())
+        .totalProcesses(stat.processes())
+        .runningProcesses(stat.procsRunning())
+        .blockedProcesses(stat.procsBlocked());
+
+    for (int core = 0; core < stat.coreCount(); core++) {
+      long[] fields = stat.core(core);
+      builder.coreStat("cpu" + stat.coreId(core), Cpu.CoreStats.builder()
+          .userTime(fields[ProcStatReader.USER])
+          .niceTime(fields[ProcStatReader.NICE])
+          .systemTime(fields[ProcStatReader.SYSTEM])
+          .idleTime(fields[ProcStatReader.IDLE])
+          .iowaitTime(fields[ProcStatReader.IOWAIT])
+          .irqTime(fields[ProcStatReader.IRQ])
+          .softirqTime(fields[ProcStatReader.SOFTIRQ])
+          .build());
+    }
     return builder.build();
   }
-  byte[] cpuImageForRange(String range) {
-    List<String> coreRange = switch (range.toLowerCase()) {
-      case "cpu0-7" -> IntStream.rangeClosed(0, 7).mapToObj(i -> "cpu" + i).toList();
-      case "cpu8-15" -> IntStream.rangeClosed(8, 15).mapToObj(i -> "cpu" + i).toList();
-      default -> throw new IllegalArgumentException("Unsupported core range: " + range);
-    };
 
-    return cpuImage(coreRange);
-  }
-  byte[] cpuImage(List<String> coreRange) {
-    Cpu cpu = cpuPercentageStats.get(); // Use precomputed percentages
-    if (cpu == null) {
-      return new byte[0]; // Fallback if percentage data is not yet ready
+  /**
+   * Draws one panel's share of the layout's columns. They are split evenly, some panels
+   * taking a column more when they do not divide; with two, the left panel gets the
+   * first half rounded up.
+   */
+  PanelFrame cpuImage(int panel, int count, CpuImage image) {
+    short[] columns = image.columns;
+    int available = procStat.getLoad().readColumns(columns); // Use precomputed percentages
+    if (available == 0) {
+      return image.frame.empty(); // Fallback if percentage data is not yet ready
     }
+    int firstColumn = (panel * available + count - 1) / count;
+    int lastColumn = ((panel + 1) * available + count - 1) / count;
 
-    // Validate that the requested cores exist in the data
-    List<String> filteredCores = coreRange.stream()
-        .filter(core -> cpu.getCoreStats().containsKey(core))
-        .toList();
-
-    List<Integer> integers = Stream.concat(
-            getFrameData().stream(),
-            IntStream.rangeClosed(0, 33)
-                .map(index -> calculateColumnBits(cpu, filteredCores, index))
-                .boxed())
-        .toList();
-
-    return BitUtils.packbits(integers);
-  }
-
-  private List<Integer> getFrameData() {
-    return List.of(
-        0b111111111, // Top border
-        0b100000001, // Frame
-        0b100000001,
-        0b101010101, // Decorative pattern
-        0b111111111, // Bottom border
-        0b000000000, // Space padding
-        0b000000000  // Space padding
-    );
+    int[] rows = image.frame.rows();
+    System.arraycopy(FRAME_DATA, 0, rows, 0, FRAME_DATA.length);
+    for (int index = 0; index < BAR_ROWS; index++) {
+      rows[FRAME_DATA.length + index] = calculateColumnBits(columns, firstColumn, lastColumn, index);
+    }
+    return image.frame.pack();
   }
 
-  private int calculateColumnBits(Cpu cpu, List<String> filteredCores, int index) {
-    return filteredCores.stream()
-        .mapToInt(core -> {
-          Cpu.CoreStats stats = cpu.getCoreStats().get(core);
-          if (stats == null) {
-            return 0;
-          }
+  private int calculateColumnBits(short[] columns, int firstColumn, int lastColumn, int index) {
+    int bits = 0;
+    for (int column = firstColumn; column < lastColumn; column++) {
+      int userRows = scaleTo33(columns[column * 2]);
+      int systemRows = scaleTo33(columns[column * 2 + 1]);
 
-          int userRows = scaleTo33(stats.getUserTime());
-          int systemRows = scaleTo33(stats.getSystemTime());
+      int userBit = (index < userRows) ? 1 : 0;
+      int systemBit = (33 - index <= systemRows) ? 1 : 0;
 
-          int userBit = (index < userRows) ? 1 : 0;
-          int systemBit = (33 - index <= systemRows) ? 1 : 0;
-
-          return userBit | systemBit;
-        })
-        .reduce(0, (accum, value) -> (accum << 1) | value);
+      bits = (bits << 1) | userBit | systemBit;
+    }
+    return bits;
   }
 
   private int scaleTo33(long time) {
     return Math.min(33, Math.max(0, (int) (time / 3)));
   }
-  private final AtomicReference<Cpu> lastCpuStats = new AtomicReference<>(); // To store the previous CPU stats
 
-  @Scheduled(fixedRate = 1000) // Runs every second
-  void computeCpuPercentages() {
-    if (!isActive(profileState)) {
-      return;
+  /**
+   * The latest per-core percentages as a {@link Cpu}, built on first request after each
+   * update. Rendering reads {@link CpuLoad} directly and never builds this.
+   *
+   * @return the percentages, or null until two samples have been taken.
+   */
+  public synchronized Cpu cpuPercentages() {
+    CpuLoad cpuLoad = procStat.getLoad();
+    long sequence = cpuLoad.sequence();
+    if (percentageView != null && sequence == percentageViewSequence) {
+      return percentageView;
     }
-    Cpu currentCpuStats = cpu();
-    Cpu last = lastCpuStats.get();
-    if (last != null) {
-      // Calculate the differences (percentages)
-      Cpu.CpuBuilder percentageBuilder = Cpu.builder();
-
-      long prevTotalTime = last.getTotalUserTime() +
-          last.getTotalNiceTime() +
-          last.getTotalSystemTime() +
-          last.getTotalIdleTime() +
-          last.getTotalIowaitTime() +
-          last.getTotalIrqTime() +
-          last.getTotalSoftirqTime();
-
-      long currTotalTime = currentCpuStats.getTotalUserTime() +
-          currentCpuStats.getTotalNiceTime() +
-          currentCpuStats.getTotalSystemTime() +
-          currentCpuStats.getTotalIdleTime() +
-          currentCpuStats.getTotalIowaitTime() +
-          currentCpuStats.getTotalIrqTime() +
-          currentCpuStats.getTotalSoftirqTime();
-
-      long totalDelta = currTotalTime - prevTotalTime;
-
-      if (totalDelta > 0) {
-        percentageBuilder
-            .totalUserTime((currentCpuStats.getTotalUserTime() - last.getTotalUserTime()) * 100 / totalDelta)
-            .totalNiceTime((currentCpuStats.getTotalNiceTime() - last.getTotalNiceTime()) * 100 / totalDelta)
-            .totalSystemTime((currentCpuStats.getTotalSystemTime() - last.getTotalSystemTime()) * 100 / totalDelta)
-            .totalIdleTime((currentCpuStats.getTotalIdleTime() - last.getTotalIdleTime()) * 100 / totalDelta)
-            .totalIowaitTime((currentCpuStats.getTotalIowaitTime() - last.getTotalIowaitTime()) * 100 / totalDelta)
-            .totalIrqTime((currentCpuStats.getTotalIrqTime() - last.getTotalIrqTime()) * 100 / totalDelta)
-            .totalSoftirqTime((currentCpuStats.getTotalSoftirqTime() - last.getTotalSoftirqTime()) * 100 / totalDelta);
-
-        // Per-core stats
-        currentCpuStats.getCoreStats().forEach((core, coreStats) -> {
-          Cpu.CoreStats lastCoreStats = last.getCoreStats().get(core);
-          if (lastCoreStats != null) {
-            long corePrevTotal = lastCoreStats.getUserTime() +
-                lastCoreStats.getNiceTime() +
-                lastCoreStats.getSystemTime() +
-                lastCoreStats.getIdleTime() +
-                lastCoreStats.getIowaitTime() +
-                lastCoreStats.getIrqTime() +
-                lastCoreStats.getSoftirqTime();
-
-            long coreCurrentTotal = coreStats.getUserTime() +
-                coreStats.getNiceTime() +
-                coreStats.getSystemTime() +
-                coreStats.getIdleTime() +
-                coreStats.getIowaitTime() +
-                coreStats.getIrqTime() +
-                coreStats.getSoftirqTime();
-
-            long coreTotalDelta = coreCurrentTotal - corePrevTotal;
+    short[] load = new short[cpuLoad.length()];
+    int[] coreIds = new int[load.length / CpuLoad.FIELDS];
+    int loadRows = cpuLoad.read(load, coreIds);
+    if (loadRows == 0) {
+      return null;
+    }
+    Cpu.CpuBuilder builder = Cpu.builder()
+        .totalUserTime((long) load[ProcStatReader.USER])
+        .totalNiceTime((long) load[ProcStatReader.NICE])
+        .totalSystemTime((long) load[ProcStatReader.SYSTEM])
+        .totalIdleTime((long) load[ProcStatReader.IDLE])
+        .totalIowaitTime((long) load[ProcStatReader.IOWAIT])
+        .totalIrqTime((long) load[ProcStatReader.IRQ])
+        .totalSoftirqTime((long) load[ProcStatReader.SOFTIRQ]);
+    for (int row = 1; row < loadRows; row++) {
+      int offset = row * CpuLoad.FIELDS;
+      builder.coreStat("cpu" + coreIds[row - 1], Cpu.CoreStats.builder()
+          .userTime((long) load[offset + ProcStatReader.USER])
+          .niceTime((long) load[offset + ProcStatReader.NICE])
+          .systemTime((long) load[offset + ProcStatReader.SYSTEM])
+          .idleTime((long) load[offset + ProcStatReader.IDLE])
+          .iowaitTime((long) load[offset + ProcStatReader.IOWAIT])
+          .irqTime((long) load[offset + ProcStatReader.IRQ])
+          .softirqTime((long) load[offset + ProcStatReader.SOFTIRQ])
+          .build());
+    }
+    percentageView = builder.build();
+    percentageViewSequence = sequence;
+    return percentageView;
+  }
 
-            if (coreTotalDelta > 0) {
-              percentageBuilder.coreStat(core, Cpu.CoreStats.builder()
-                  .userTime((coreStats.getUserTime() - lastCoreStats.getUserTime()) * 100 / coreTotalDelta)
-                  .niceTime((coreStats.getNiceTime() - lastCoreStats.getNiceTime()) * 100 / coreTotalDelta)
-                  .systemTime((coreStats.getSystemTime() - lastCoreStats.getSystemTime()) * 100 / coreTotalDelta)
-                  .idleTime((coreStats.getIdleTime() - lastCoreStats.getIdleTime()) * 100 / coreTotalDelta)
-                  .iowaitTime((coreStats.getIowaitTime() - lastCoreStats.getIowaitTime()) * 100 / coreTotalDelta)
-                  .irqTime((coreStats.getIrqTime() - lastCoreStats.getIrqTime()) * 100 / coreTotalDelta)
-                  .softirqTime((coreStats.getSoftirqTime() - lastCoreStats.getSoftirqTime()) * 100 / coreTotalDelta)
-                  .build());
-            }
-          }
-        });
-      }
+  /**
+   * Per-panel render scratch: the image and a private copy of the column table.
+   */
+  static final class CpuImage {
+    private final DrawBuffer frame = new DrawBuffer(FRAME_DATA.length + BAR_ROWS);
+    private final short[] columns;
 
-      cpuPercentageStats.set(percentageBuilder.build());
+    CpuImage(int maxColumns) {
+      columns = new short[2 * maxColumns];
     }
-    // Update the last stats
-    lastCpuStats.set(currentCpuStats);
   }
-  
 }
@@ -9,7 +9,7 @@ import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
-public class DasBlinkenLights implements PanelService {
+public class DasBlinkenLights implements CanvasService {
   private Random random;
 
   private final ProfileState profileState;
@@ -34,21 +34,12 @@ public class DasBlinkenLights implements PanelService {
   }
 
   @Override
-  public void showLeft(CommunicationCreator left) {
-    if (!isActive(profileState)) {
+  public void show(CommunicationCreator panel, int index, int count) {
+    if (!isShown(profileState, panel) || !panel.isFrameDue()) {
       return;
     }
-    log.trace("DasBlinkenLights: showLeft");
-    left.sendDraw(thirtyNineRandomBytes());
-  }
-
-  @Override
-  public void showRight(CommunicationCreator right) {
-    if (!isActive(profileState)) {
-      return;
-    }
-    log.trace("DasBlinkenLights: showRight");
-    right.sendDraw(thirtyNineRandomBytes());
+    log.trace("DasBlinkenLights: show {} of {}", index, count);
+    panel.sendDraw(thirtyNineRandomBytes());
   }
   
   byte[] thirtyNineRandomBytes() {
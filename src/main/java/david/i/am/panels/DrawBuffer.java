@@ -0,0 +1,39 @@
+package david.i.am.panels;
+
+/**
+ * Reusable scratch space for one monochrome image: the 9-bit rows a renderer
+ * fills in, and the frame they are packed into, DRAW header included.
+ * Each side of each service keeps its own instance, so rendering a frame
+ * allocates nothing.
+ */
+class DrawBuffer {
+
+    private final int[] rows;
+    private final PanelFrame frame;
+
+    DrawBuffer(int rowCount) {
+        this.rows = new int[rowCount];
+        this.frame = new PanelFrame(PanelFrame.HEADER_LENGTH + BitUtils.packedLength(rowCount), 1);
+    }
+
+    int[] rows() {
+        return rows;
+    }
+
+    /**
+     * Packs the current rows into a single DRAW packet.
+     *
+     * @return the frame, ready for {@link CommunicationCreator#sendFrame}.
+     */
+    PanelFrame pack() {
+        frame.clear().addPacked(CommunicationCreator.CommandVals.DRAW, rows, 0, rows.length);
+        return frame;
+    }
+
+    /**
+     * @return the frame emptied, for when there is nothing to draw yet.
+     */
+    PanelFrame empty() {
+        return frame.clear();
+    }
+}
@@ -0,0 +1,127 @@
+package david.i.am.panels;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * HTTP endpoints for pushing frames to the "external" profile ({@link ExternalFrameService}).
+ * <p>
+ * Single frames go to {@code PUT /frames/{left|right|both}/draw} (39 bytes) or
+ * {@code .../greyscale} (306 bytes) as {@code application/octet-stream}, and brightness
+ * to {@code PUT /frames/{panel}/brightness?level=0-255}. A producer sending many frames
+ * can keep one {@code POST /frames/stream} open and write messages to it as it goes
+ * (chunked); see {@link ExternalFrameService#pushAll(InputStream)} for the framing.
+ * <p>
+ * Every call answers with the received, shown and dropped frame counts. A rising
+ * dropped count tells the producer it is sending faster than the panels draw. The
+ * stream answers as it goes: one JSON line of counts at most every
+ * {@value #STREAM_STATS_MS} ms while messages arrive, and a last one when the body
+ * ends, or an {@code error} line for a malformed message.
+ * <p>
+ * The server listens on the loopback address only unless {@code server.address} says
+ * otherwise.
+ */
+@RestController
+@RequestMapping("/frames")
+public class ExternalFrameController {
+
+  static final long STREAM_STATS_MS = 250;
+
+  private final ExternalFrameService frames;
+
+  public ExternalFrameController(ExternalFrameService frames) {
+    this.frames = frames;
+  }
+
+  @GetMapping
+  public ExternalFrameService.Stats stats() {
+    return frames.getStats();
+  }
+
+  @PutMapping(path = "/{panel}/draw", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+  public ExternalFrameService.Stats draw(@PathVariable String panel, @RequestBody byte[] frame) {
+    requireLength(frame, ExternalFrameService.DRAW_BYTES);
+    frames.pushDraw(panel(panel), frame, 0);
+    return frames.getStats();
+  }
+
+  @PutMapping(path = "/{panel}/greyscale", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+  public ExternalFrameService.Stats greyscale(@PathVariable String panel, @RequestBody byte[] frame) {
+    requireLength(frame, ExternalFrameService.GREYSCALE_BYTES);
+    frames.pushGreyscale(panel(panel), frame, 0);
+    return frames.getStats();
+  }
+
+  @PutMapping("/{panel}/brightness")
+  public ExternalFrameService.Stats brightness(@PathVariable String panel, @RequestParam int level) {
+    try {
+      frames.pushBrightness(panel(panel), level);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    return frames.getStats();
+  }
+
+  @PostMapping(path = "/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public StreamingResponseBody stream(InputStream body) {
+    return out -> {
+      long interval = TimeUnit.MILLISECONDS.toNanos(STREAM_STATS_MS);
+      long[] reportedAt = {System.nanoTime()};
+      try {
+        frames.pushAll(body, messages -> {
+          long now = System.nanoTime();
+          if (now - reportedAt[0] >= interval) {
+            reportedAt[0] = now;
+            writeLine(out, statsLine(frames.getStats()));
+          }
+        });
+      } catch (ParseError e) {
+        writeLine(out, "{\"error\":\"" + e.getMessage().replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+        return;
+      }
+      writeLine(out, statsLine(frames.getStats()));
+    };
+  }
+
+  static String statsLine(ExternalFrameService.Stats stats) {
+    return "{\"received\":" + stats.getReceived() + ",\"shown\":" + stats.getShown()
+        + ",\"dropped\":" + stats.getDropped() + "}";
+  }
+
+  private static void writeLine(OutputStream out, String line) throws IOException {
+    out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  private static ExternalFrameService.Panel panel(String name) {
+    try {
+      return ExternalFrameService.Panel.valueOf(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No panel " + name + "; use left, right or both");
+    }
+  }
+
+  private static void requireLength(byte[] frame, int length) {
+    if (frame.length != length) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Expected a " + length + "-byte frame, got " + frame.length + " bytes");
+    }
+  }
+}
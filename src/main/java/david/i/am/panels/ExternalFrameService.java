@@ -0,0 +1,263 @@
+package david.i.am.panels;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.stereotype.Service;
+
+/**
+ * The "external" profile: shows frames pushed by other programs through
+ * {@link ExternalFrameController} instead of drawing its own.
+ * <p>
+ * Each panel has a one-frame mailbox. A pushed frame replaces one that has not been
+ * shown yet, and the replaced frame is counted as dropped. A producer pushing faster
+ * than the panels draw only loses frames, it never builds a queue. Brightness is kept
+ * apart from frames and is sent once per change.
+ * <p>
+ * Frames are accepted whichever profile is active, but only shown while "external" is.
+ */
+@Service
+public class ExternalFrameService implements PanelService {
+
+  public static final String PROFILE = "external";
+  public static final int COLUMNS = 9;
+  public static final int ROWS = 34;
+  /** A monochrome frame: one bit per LED, 9 x 34 bits, as DRAW takes it. */
+  public static final int DRAW_BYTES = 39;
+  /** A greyscale frame: one brightness byte per LED, column by column. */
+  public static final int GREYSCALE_BYTES = COLUMNS * ROWS;
+
+  public enum Panel { LEFT, RIGHT, BOTH }
+
+  private static final Panel[] PANELS = Panel.values();
+
+  private final ProfileState profileState;
+  private final Mailbox left = new Mailbox();
+  private final Mailbox right = new Mailbox();
+  private final Mailbox[] leftOnly = {left};
+  private final Mailbox[] rightOnly = {right};
+  private final Mailbox[] both = {left, right};
+
+  public ExternalFrameService(ProfileState profileState) {
+    this.profileState = profileState;
+  }
+
+  @Override
+  public String getProfileName() {
+    return PROFILE;
+  }
+
+  @Override
+  public void showLeft(CommunicationCreator panel) {
+    show(left, panel);
+  }
+
+  @Override
+  public void showRight(CommunicationCreator panel) {
+    show(right, panel);
+  }
+
+  private void show(Mailbox mailbox, CommunicationCreator panel) {
+    if (!isActive(profileState)) {
+      return;
+    }
+    int brightness = mailbox.takeBrightness();
+    if (brightness >= 0) {
+      panel.setBrightness(brightness);
+    }
+    if (!mailbox.hasFrame() || !panel.isFrameDue()) {
+      return;
+    }
+    PanelFrame frame = mailbox.takeFrame();
+    if (frame != null) {
+      panel.sendFrame(frame);
+    }
+  }
+
+  /**
+   * Pushes a monochrome frame of {@link #DRAW_BYTES} bytes starting at {@code offset}.
+   */
+  public void pushDraw(Panel panel, byte[] data, int offset) {
+    for (Mailbox mailbox : mailboxes(panel)) {
+      mailbox.putDraw(data, offset);
+    }
+  }
+
+  /**
+   * Pushes a greyscale frame of {@link #GREYSCALE_BYTES} bytes starting at {@code offset}:
+   * {@link #ROWS} brightness bytes for the first column, then for the next, and so on.
+   */
+  public void pushGreyscale(Panel panel, byte[] data, int offset) {
+    for (Mailbox mailbox : mailboxes(panel)) {
+      mailbox.putGreyscale(data, offset);
+    }
+  }
+
+  public void pushBrightness(Panel panel, int brightness) {
+    if (brightness < 0 || brightness > 255) {
+      throw new IllegalArgumentException("Brightness must be 0-255, not " + brightness);
+    }
+    for (Mailbox mailbox : mailboxes(panel)) {
+      mailbox.putBrightness(brightness);
+    }
+  }
+
+  /**
+   * Pushes every message of a stream, until the stream ends. Each message is
+   * <pre>
+   * panel:u8 (0 left, 1 right, 2 both)  command:u8  length:u16 (big-endian)  payload
+   * </pre>
+   * where the command is DRAW with a {@value #DRAW_BYTES}-byte frame,
+   * DRAW_GREY_COL_BUFFER with a {@value #GREYSCALE_BYTES}-byte greyscale frame, or
+   * BRIGHTNESS with one byte.
+   *
+   * @return the number of messages pushed.
+   * @throws ParseError on a malformed message; the messages before it stay pushed.
+   */
+  public long pushAll(InputStream stream) throws IOException {
+    return pushAll(stream, messages -> { });
+  }
+
+  /**
+   * As {@link #pushAll(InputStream)}, calling {@code progress} after each message.
+   */
+  public long pushAll(InputStream stream, Progress progress) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    byte[] payload = new byte[GREYSCALE_BYTES];
+    long messages = 0;
+    while (true) {
+      int panelByte = in.read();
+      if (panelByte < 0) {
+        return messages;
+      }
+      try {
+        if (panelByte >= PANELS.length) {
+          throw new ParseError("Unknown panel " + panelByte + " in message " + messages, null);
+        }
+        Panel panel = PANELS[panelByte];
+        int command = in.readUnsignedByte();
+        int length = in.readUnsignedShort();
+        if (command == CommunicationCreator.CommandVals.DRAW.getValue() && length == DRAW_BYTES) {
+          in.readFully(payload, 0, length);
+          pushDraw(panel, payload, 0);
+        } else if (command == CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER.getValue()
+            && length == GREYSCALE_BYTES) {
+          in.readFully(payload, 0, length);
+          pushGreyscale(panel, payload, 0);
+        } else if (command == CommunicationCreator.CommandVals.BRIGHTNESS.getValue() && length == 1) {
+          pushBrightness(panel, in.readUnsignedByte());
+        } else {
+          throw new ParseError("Unsupported command " + command + " with " + length
+              + " bytes in message " + messages, null);
+        }
+      } catch (EOFException e) {
+        throw new ParseError("Stream ended inside message " + messages, e);
+      }
+      messages++;
+      progress.pushed(messages);
+    }
+  }
+
+  /**
+   * Told of each message {@link #pushAll(InputStream, Progress)} pushes.
+   */
+  @FunctionalInterface
+  public interface Progress {
+    void pushed(long messages) throws IOException;
+  }
+
+  private Mailbox[] mailboxes(Panel panel) {
+    return switch (panel) {
+      case LEFT -> leftOnly;
+      case RIGHT -> rightOnly;
+      case BOTH -> both;
+    };
+  }
+
+  @Builder
+  @Getter
+  public static class Stats {
+    private long received;   // frames pushed
+    private long shown;      // frames handed to the panel
+    private long dropped;    // frames replaced before they were shown
+  }
+
+  public Stats getStats() {
+    return Stats.builder()
+        .received(left.received.get() + right.received.get())
+        .shown(left.shown.get() + right.shown.get())
+        .dropped(left.dropped.get() + right.dropped.get())
+        .build();
+  }
+
+  /**
+   * One panel's latest pushed frame and brightness.
+   */
+  private static final class Mailbox {
+    private final PanelFrame pending = new PanelFrame(
+        (PanelFrame.HEADER_LENGTH + ROWS + 1) * COLUMNS + PanelFrame.HEADER_LENGTH, COLUMNS + 1);
+    private final PanelFrame showing = new PanelFrame(pending.array().length, COLUMNS + 1); // renderer only
+    private boolean fresh; // guarded by this
+    private int brightness = -1; // guarded by this; -1 when unchanged
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong shown = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    synchronized void putDraw(byte[] data, int offset) {
+      pending.clear().add(CommunicationCreator.CommandVals.DRAW, data, offset, DRAW_BYTES);
+      arrived();
+    }
+
+    synchronized void putGreyscale(byte[] data, int offset) {
+      pending.clear();
+      for (int col = 0; col < COLUMNS; col++) {
+        int start = pending.reserve(CommunicationCreator.CommandVals.STAGE_GREY_COL, ROWS + 1);
+        pending.array()[start] = (byte) col; // The first byte is the column index
+        System.arraycopy(data, offset + col * ROWS, pending.array(), start + 1, ROWS);
+      }
+      pending.reserve(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, 0);
+      arrived();
+    }
+
+    private void arrived() {
+      received.incrementAndGet();
+      if (fresh) {
+        dropped.incrementAndGet();
+      }
+      fresh = true;
+    }
+
+    synchronized void putBrightness(int level) {
+      brightness = level;
+    }
+
+    synchronized int takeBrightness() {
+      int level = brightness;
+      brightness = -1;
+      return level;
+    }
+
+    synchronized boolean hasFrame() {
+      return fresh;
+    }
+
+    /**
+     * @return the pending frame, or null if there is none. Valid until the next call.
+     */
+    PanelFrame takeFrame() {
+      synchronized (this) {
+        if (!fresh) {
+          return null;
+        }
+        showing.copyFrom(pending);
+        fresh = false;
+      }
+      shown.incrementAndGet();
+      return showing;
+    }
+  }
+}
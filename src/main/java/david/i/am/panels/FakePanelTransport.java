@@ -0,0 +1,236 @@
+package david.i.am.panels;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-memory LED matrix module, for running and load-testing without hardware.
+ * <p>
+ * Models the parts of a real port that pacing and backpressure depend on:
+ * <ul>
+ *   <li>the line drains at the baud rate, 10 bits per byte;</li>
+ *   <li>writes go into a bounded output buffer and block while it is full; if it
+ *       does not drain enough before the write timeout, the write is partial;</li>
+ *   <li>the firmware takes a fixed time per packet, one packet after another, and
+ *       answers each VERSION request with a 32-byte reply once everything before
+ *       it has been processed, and tells the data listener then.</li>
+ * </ul>
+ * Packets are recognised by their two header bytes. Everything written is counted,
+ * and captured (up to 1 MiB) for {@link #takeReceived()}.
+ */
+public class FakePanelTransport implements PanelTransport {
+
+    public static final int DEFAULT_OUTPUT_BUFFER = 4096;
+    public static final long DEFAULT_PACKET_PROCESSING_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final int RESPONSE_LENGTH = 32;
+    private static final byte[] VERSION = {0, 0x19, 0}; // v0.1.9
+    private static final int CAPTURE_LIMIT = 1 << 20;
+
+    private final String name;
+    private final double nanosPerByte;
+    private final int outputBuffer;
+    private final long writeTimeoutNanos;
+    private final long packetProcessingNanos;
+
+    // All guarded by this
+    private long lineFreeNanos; // when the last accepted byte is on the wire
+    private long deviceFreeNanos; // when the firmware has processed every packet received
+    private int headerMatched; // header bytes matched at the end of the previous write
+    private final ArrayDeque<Response> responses = new ArrayDeque<>();
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    private long bytesReceived;
+    private long packetsReceived;
+    private long partialWrites;
+    private boolean open = true;
+    private Runnable dataListener;
+    private ScheduledThreadPoolExecutor replies; // tells the listener when a reply is ready
+
+    public FakePanelTransport(String name, int baudRate) {
+        this(name, baudRate, DEFAULT_OUTPUT_BUFFER, DEFAULT_WRITE_TIMEOUT_MS, DEFAULT_PACKET_PROCESSING_NANOS);
+    }
+
+    /**
+     * @param outputBuffer          Bytes the driver accepts ahead of the line.
+     * @param writeTimeoutMs        How long a write blocks for room in the buffer before it goes partial.
+     * @param packetProcessingNanos Firmware time per packet.
+     */
+    public FakePanelTransport(String name, int baudRate, int outputBuffer, long writeTimeoutMs,
+                              long packetProcessingNanos) {
+        this.name = name;
+        this.nanosPerByte = 10e9 / baudRate;
+        this.outputBuffer = outputBuffer;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMs);
+        this.packetProcessingNanos = packetProcessingNanos;
+        this.lineFreeNanos = System.nanoTime();
+        this.deviceFreeNanos = lineFreeNanos;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int write(byte[] buffer, int offset, int length) {
+        long now = System.nanoTime();
+        int accepted;
+        long waitNanos;
+        synchronized (this) {
+            if (!open) {
+                return -1;
+            }
+            // Whatever fits in the buffer by the time the write would time out
+            int room = outputBuffer - backlog(now + writeTimeoutNanos);
+            accepted = Math.min(length, Math.max(0, room));
+            // The write returns once the accepted bytes fit in the buffer
+            long fitsAt = lineFreeNanos - (long) ((outputBuffer - accepted) * nanosPerByte);
+            waitNanos = Math.max(0, fitsAt - now);
+            if (accepted < length) {
+                partialWrites++;
+                waitNanos = writeTimeoutNanos;
+            }
+            receive(buffer, offset, accepted, now);
+        }
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        return accepted;
+    }
+
+    private void receive(byte[] buffer, int offset, int length, long now) {
+        long arrival = Math.max(now, lineFreeNanos);
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[offset + i];
+            arrival += (long) nanosPerByte;
+            if (headerMatched == 2) {
+                // Command byte: the packet has arrived as far as the firmware cares
+                packetsReceived++;
+                deviceFreeNanos = Math.max(deviceFreeNanos, arrival) + packetProcessingNanos;
+                if (b == CommunicationCreator.CommandVals.VERSION.getValue()) {
+                    responses.add(new Response(deviceFreeNanos));
+                    if (dataListener != null) {
+                        replies.schedule(dataListener, deviceFreeNanos - now, TimeUnit.NANOSECONDS);
+                    }
+                }
+                headerMatched = 0;
+            } else if (headerMatched == 1 && b == PanelFrame.HEADER_1) {
+                headerMatched = 2;
+            } else {
+                headerMatched = b == PanelFrame.HEADER_0 ? 1 : 0;
+            }
+        }
+        lineFreeNanos = Math.max(now, lineFreeNanos) + (long) (length * nanosPerByte);
+        bytesReceived += length;
+        if (captured.size() + length <= CAPTURE_LIMIT) {
+            captured.write(buffer, offset, length);
+        }
+    }
+
+    private int backlog(long at) {
+        return (int) Math.max(0, (lineFreeNanos - at) / nanosPerByte);
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length) {
+        if (!open) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        int read = 0;
+        while (read < length && !responses.isEmpty() && responses.peek().readyAt - now <= 0) {
+            Response response = responses.peek();
+            int n = Math.min(length - read, RESPONSE_LENGTH - response.position);
+            System.arraycopy(response.bytes, response.position, buffer, offset + read, n);
+            response.position += n;
+            read += n;
+            if (response.position == RESPONSE_LENGTH) {
+                responses.poll();
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized boolean setDataListener(Runnable listener) {
+        if (replies == null) {
+            replies = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "fake-replies-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            replies.prestartAllCoreThreads(); // so that the first reply is not late
+        }
+        dataListener = listener;
+        long now = System.nanoTime();
+        for (Response response : responses) {
+            replies.schedule(listener, response.readyAt - now, TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int bytesAvailable() {
+        long now = System.nanoTime();
+        int available = 0;
+        for (Response response : responses) {
+            if (response.readyAt - now > 0) {
+                break;
+            }
+            available += RESPONSE_LENGTH - response.position;
+        }
+        return available;
+    }
+
+    @Override
+    public synchronized int bytesAwaitingWrite() {
+        return backlog(System.nanoTime());
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        if (replies != null) {
+            replies.shutdownNow();
+        }
+    }
+
+    /**
+     * @return everything written since the last call, up to the capture limit.
+     */
+    public synchronized byte[] takeReceived() {
+        byte[] bytes = captured.toByteArray();
+        captured.reset();
+        return bytes;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public synchronized long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public synchronized long getPartialWrites() {
+        return partialWrites;
+    }
+
+    private static final class Response {
+        final byte[] bytes = new byte[RESPONSE_LENGTH];
+        final long readyAt;
+        int position;
+
+        Response(long readyAt) {
+            this.readyAt = readyAt;
+            System.arraycopy(VERSION, 0, bytes, 0, VERSION.length);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package david.i.am.panels;
+
+/**
+ * Keeps one port's frame rate inside the bytes the serial link can carry.
+ * <p>
+ * The budget is the configured baud rate at 10 bits per byte (8N1), less some headroom.
+ * Control traffic (brightness, sleep, version requests and the like) is spent from the
+ * same budget first, as a smoothed rate; what is left, divided by the size of the frame
+ * the active profile last submitted, is the frame rate that fits. Frames written as only
+ * what changed take fewer bytes than were submitted, and earn a higher rate; the last
+ * written size is used when it is the smaller. The grant is further
+ * capped by the configured maximum, by the frame rate the {@link LinkPacer} measured the
+ * device to sustain, and by a back-off factor that drops whenever the writer falls
+ * behind (a frame is superseded before it was written) and recovers as frames go out.
+ * <p>
+ * Renderers ask {@link CommunicationCreator#isFrameDue()} before drawing, so frames the
+ * link could not carry are never rendered. Thread-safe.
+ */
+final class FrameGovernor {
+
+    static final double BUDGET_FRACTION = 0.9; // headroom for framing overhead and jitter
+    static final double MIN_FPS = 1;
+    private static final int BITS_PER_BYTE = 10; // 8 data bits plus start and stop bits
+    private static final double RATE_WINDOW_NANOS = 1e9; // time constant of the control traffic rate
+    private static final double MIN_BACKOFF = 0.1;
+    private static final double BACKOFF_FACTOR = 0.75;
+    private static final double RECOVERY_STEP = 0.02;
+
+    private final double budgetBytesPerSecond;
+    private final double maxFps;
+
+    private double controlBytesPerSecond;
+    private long controlUpdatedNanos;
+    private int frameBytes;
+    private int writtenBytes;
+    private double linkFps;
+    private double backoff = 1;
+    private long nextFrameNanos;
+
+    FrameGovernor(int baudRate, double maxFps) {
+        this.budgetBytesPerSecond = (double) baudRate / BITS_PER_BYTE * BUDGET_FRACTION;
+        this.maxFps = Math.max(MIN_FPS, maxFps);
+        this.controlUpdatedNanos = System.nanoTime();
+        this.nextFrameNanos = controlUpdatedNanos;
+    }
+
+    /**
+     * @return true once the interval of the current target frame rate has passed since the last frame.
+     */
+    synchronized boolean isFrameDue(long nowNanos) {
+        return nowNanos - nextFrameNanos >= 0;
+    }
+
+    /**
+     * @return how long until {@link #isFrameDue} holds, 0 if it does now.
+     */
+    synchronized long nanosUntilFrameDue(long nowNanos) {
+        return Math.max(0, nextFrameNanos - nowNanos);
+    }
+
+    /**
+     * Accounts for a frame handed to the mailbox and schedules when the next one is due.
+     *
+     * @param bytes   Size of the frame on the wire, headers included.
+     * @param linkFps Frame rate the link was measured to sustain, 0 if not known yet.
+     */
+    synchronized void frameSubmitted(int bytes, double linkFps, long nowNanos) {
+        this.frameBytes = bytes;
+        this.linkFps = linkFps;
+        nextFrameNanos = nowNanos + (long) (1e9 / targetFps(nowNanos));
+    }
+
+    /**
+     * Accounts for bytes written outside of frames.
+     */
+    synchronized void controlWritten(int bytes, long nowNanos) {
+        decayControlRate(nowNanos);
+        controlBytesPerSecond += bytes * 1e9 / RATE_WINDOW_NANOS;
+    }
+
+    /**
+     * The writer fell behind: a frame was replaced before it could be written.
+     */
+    synchronized void frameSuperseded() {
+        backoff = Math.max(MIN_BACKOFF, backoff * BACKOFF_FACTOR);
+    }
+
+    /**
+     * A frame was written in full.
+     *
+     * @param bytes What it took on the wire, fewer than submitted if only changes were written.
+     */
+    synchronized void frameWritten(int bytes) {
+        writtenBytes = bytes;
+        backoff = Math.min(1, backoff + RECOVERY_STEP);
+    }
+
+    /**
+     * @return the frame rate currently granted to whatever profile is drawing on this port.
+     */
+    synchronized double targetFps(long nowNanos) {
+        decayControlRate(nowNanos);
+        double fps = maxFps;
+        int bytes = writtenBytes > 0 ? Math.min(frameBytes, writtenBytes) : frameBytes;
+        if (bytes > 0) {
+            fps = Math.min(fps, (budgetBytesPerSecond - controlBytesPerSecond) / bytes);
+        }
+        if (linkFps > 0) {
+            fps = Math.min(fps, linkFps);
+        }
+        return Math.max(MIN_FPS, fps * backoff);
+    }
+
+    double getBudgetBytesPerSecond() {
+        return budgetBytesPerSecond;
+    }
+
+    private void decayControlRate(long nowNanos) {
+        long elapsed = nowNanos - controlUpdatedNanos;
+        if (elapsed > 0) {
+            controlBytesPerSecond *= Math.exp(-elapsed / RATE_WINDOW_NANOS);
+            controlUpdatedNanos = nowNanos;
+        }
+    }
+}
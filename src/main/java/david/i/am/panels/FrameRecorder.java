@@ -0,0 +1,257 @@
+package david.i.am.panels;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends every packet written to the panels to a compact binary log, for replay
+ * ({@link FrameReplayer}) and offline analysis ({@link RecordingStats}).
+ * <p>
+ * Format, big-endian:
+ * <pre>
+ * header:  "LMPR"  version:u8  startEpochMillis:i64
+ * port:    0x01  portId:u8  nameLength:u16  name:UTF-8      (before a port's first packet)
+ * packet:  0x02  nanos:i64  portId:u8  command:u8  payloadLength:u16  payload
+ * </pre>
+ * {@code nanos} counts from the start of the recording. Records go into one of two
+ * 128 KiB buffers; recording a packet is a few puts into it. The file is written on a
+ * flusher thread of the recorder's own, outside the lock recording takes: a second
+ * after the first record that is not in the file yet, straight away when a buffer
+ * fills (recording goes on into the other one), and on close. Panel writers only wait
+ * for the disk if it falls a whole buffer behind. With nothing recorded, the flusher
+ * sleeps until something is.
+ * <p>
+ * Thread-safe; all panel writer threads share one recorder.
+ */
+@Slf4j
+public class FrameRecorder implements Closeable {
+
+    static final byte[] MAGIC = {'L', 'M', 'P', 'R'};
+    static final int VERSION = 1;
+    static final byte PORT = 1;
+    static final byte PACKET = 2;
+    private static final int BUFFER_SIZE = 128 * 1024; // always room for the largest possible record
+    static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    private final Path path;
+    private final FileChannel channel; // flusher thread only, until it has stopped
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Integer> portIds = new HashMap<>(); // guarded by this
+    private ByteBuffer filling = ByteBuffer.allocateDirect(BUFFER_SIZE); // guarded by this
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_SIZE); // guarded by this; null while held by the flusher
+    private ByteBuffer pending; // guarded by this: a full buffer waiting for the flusher
+    private boolean open = true; // guarded by this
+    private final Thread flusher;
+
+    public FrameRecorder(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        filling.put(MAGIC).put((byte) VERSION).putLong(System.currentTimeMillis());
+        flusher = new Thread(this::flushLoop, "frame-recorder");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Recording panel traffic to {}", path);
+    }
+
+    /**
+     * Records one packet as written to a port: header, command byte and payload.
+     */
+    public synchronized void record(String port, byte[] packet, int offset, int length) {
+        if (!open || length < PanelFrame.HEADER_LENGTH) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            int portId = portId(port);
+            int payloadLength = length - PanelFrame.HEADER_LENGTH;
+            if (portId < 0 || !ensureRoom(1 + 8 + 1 + 1 + 2 + payloadLength)) {
+                return;
+            }
+            filling.put(PACKET)
+                .putLong(now - startNanos)
+                .put((byte) portId)
+                .put(packet[offset + 2])
+                .putShort((short) payloadLength)
+                .put(packet, offset + PanelFrame.HEADER_LENGTH, payloadLength);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the port's id, or -1 if the recording stopped while making room for it.
+     */
+    private int portId(String port) throws InterruptedException {
+        Integer id = portIds.get(port);
+        if (id == null) {
+            byte[] name = String.valueOf(port).getBytes(StandardCharsets.UTF_8);
+            if (!ensureRoom(1 + 1 + 2 + name.length)) {
+                return -1;
+            }
+            id = portIds.size();
+            portIds.put(port, id);
+            filling.put(PORT).put((byte) (int) id).putShort((short) name.length).put(name);
+        }
+        return id;
+    }
+
+    /**
+     * Makes room for {@code bytes} in the buffer being filled, handing it to the flusher
+     * if it is full. Wakes the flusher when the first record goes into an empty buffer.
+     *
+     * @return false if the recording stopped meanwhile.
+     */
+    private boolean ensureRoom(int bytes) throws InterruptedException {
+        while (open && filling.remaining() < bytes) {
+            if (spare != null && pending == null) {
+                pending = filling;
+                filling = spare;
+                spare = null;
+                notifyAll();
+            } else {
+                wait(); // the disk is a whole buffer behind
+            }
+        }
+        if (open && filling.position() == 0) {
+            notifyAll();
+        }
+        return open;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer full;
+            synchronized (this) {
+                try {
+                    while (open && pending == null && filling.position() == 0) {
+                        wait();
+                    }
+                    if (open && pending == null) {
+                        wait(FLUSH_INTERVAL_MS); // let records gather; a full buffer or close cuts this short
+                    }
+                } catch (InterruptedException e) {
+                    open = false;
+                }
+                if (pending == null && filling.position() > 0 && spare != null) {
+                    pending = filling;
+                    filling = spare;
+                    spare = null;
+                }
+                full = pending;
+                pending = null;
+                if (full == null) {
+                    if (!open && filling.position() == 0) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            try {
+                full.flip();
+                while (full.hasRemaining()) {
+                    channel.write(full);
+                }
+            } catch (IOException e) {
+                log.error("Recording to {} failed; recording stopped", path, e);
+                synchronized (this) {
+                    open = false;
+                    filling.clear();
+                    pending = null;
+                }
+            }
+            synchronized (this) {
+                full.clear();
+                spare = full;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops recording and waits for everything recorded to reach the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            open = false;
+            notifyAll();
+        }
+        try {
+            flusher.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Receives the packets of a recording, in order.
+     */
+    public interface PacketHandler {
+        void packet(long nanos, String port, int command, byte[] payload) throws IOException;
+    }
+
+    /**
+     * Reads a recording from start to end. A record cut short at the end of the file
+     * (recording interrupted mid-write) ends the read without error.
+     */
+    public static void read(Path path, PacketHandler handler) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            int version = in.readUnsignedByte();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new ParseError("Not a panel recording: " + path, null);
+            }
+            in.readLong(); // start time, wall clock
+            List<String> ports = new ArrayList<>();
+            while (true) {
+                int kind = in.read();
+                if (kind < 0) {
+                    return;
+                }
+                try {
+                    if (kind == PORT) {
+                        int id = in.readUnsignedByte();
+                        byte[] name = new byte[in.readUnsignedShort()];
+                        in.readFully(name);
+                        while (ports.size() <= id) {
+                            ports.add(null);
+                        }
+                        ports.set(id, new String(name, StandardCharsets.UTF_8));
+                    } else if (kind == PACKET) {
+                        long nanos = in.readLong();
+                        String port = ports.get(in.readUnsignedByte());
+                        int command = in.readUnsignedByte();
+                        byte[] payload = new byte[in.readUnsignedShort()];
+                        in.readFully(payload);
+                        handler.packet(nanos, port, command, payload);
+                    } else {
+                        throw new ParseError("Unknown record type " + kind + " in " + path, null);
+                    }
+                } catch (EOFException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
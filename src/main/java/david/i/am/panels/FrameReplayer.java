@@ -0,0 +1,114 @@
+package david.i.am.panels;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams a {@link FrameRecorder} log back to panels, packet by packet, with the
+ * recorded timing scaled by a speed factor.
+ * <p>
+ * Packets go straight to the transports, bypassing the mailbox, pacing and
+ * suppression, so the devices see exactly the recorded byte stream.
+ * <p>
+ * From the command line:
+ * {@code FrameReplayer <recording> [speed] [serial|fake]}; speed 1 is real time,
+ * 4 four times faster, 0 as fast as the transports take it. Recorded "left" and
+ * "right" ports go to the modules found by {@link UsbPortFinder}, in USB port
+ * order; other port names are taken as device paths.
+ */
+@Slf4j
+public class FrameReplayer {
+
+    private static final int BAUD_RATE = 115200;
+
+    private final Function<String, PanelTransport> transportFor;
+    private final double speed;
+    private final Map<String, PanelTransport> transports = new LinkedHashMap<>();
+    private long packets;
+    private long shortWrites;
+
+    /**
+     * @param transportFor Opens the transport for a recorded port name; called once per port.
+     * @param speed        Playback speed, 1 for the original timing, 0 or less for no delays.
+     */
+    public FrameReplayer(Function<String, PanelTransport> transportFor, double speed) {
+        this.transportFor = transportFor;
+        this.speed = speed;
+    }
+
+    /**
+     * Replays a whole recording. Returns once the last packet has been written.
+     *
+     * @return the number of packets replayed.
+     */
+    public long replay(Path recording) throws IOException {
+        long start = System.nanoTime();
+        FrameRecorder.read(recording, (nanos, port, command, payload) -> {
+            if (speed > 0) {
+                awaitUntil(start + (long) (nanos / speed));
+            }
+            PanelTransport transport = transports.computeIfAbsent(port, transportFor);
+            byte[] packet = new byte[PanelFrame.HEADER_LENGTH + payload.length];
+            packet[0] = PanelFrame.HEADER_0;
+            packet[1] = PanelFrame.HEADER_1;
+            packet[2] = (byte) command;
+            System.arraycopy(payload, 0, packet, PanelFrame.HEADER_LENGTH, payload.length);
+            if (transport.write(packet, 0, packet.length) < packet.length) {
+                shortWrites++;
+            }
+            packets++;
+        });
+        if (shortWrites > 0) {
+            log.warn("{} of {} packets were not fully written", shortWrites, packets);
+        }
+        return packets;
+    }
+
+    private static void awaitUntil(long due) throws InterruptedIOException {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Replay interrupted");
+            }
+        }
+    }
+
+    /**
+     * Closes every transport the replay opened.
+     */
+    public void close() {
+        transports.values().forEach(PanelTransport::close);
+        transports.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FrameReplayer <recording> [speed] [serial|fake]");
+            System.exit(2);
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        boolean fake = args.length > 2 && args[2].equals("fake");
+        UsbPortFinder finder = new UsbPortFinder(UsbPortFinder.FRAMEWORK_VENDOR_ID, UsbPortFinder.LED_MATRIX_PRODUCT_ID, 2);
+        FrameReplayer replayer = new FrameReplayer(port -> fake
+            ? new FakePanelTransport(port, BAUD_RATE)
+            : new SerialPortTransport(switch (port) {
+                case "left" -> finder.find("", 0, port);
+                case "right" -> finder.find("", 1, port);
+                default -> port;
+            }, BAUD_RATE, PanelTransport.DEFAULT_WRITE_TIMEOUT_MS), speed);
+        long start = System.nanoTime();
+        try {
+            long packets = replayer.replay(Path.of(args[0]));
+            System.out.printf("Replayed %d packets in %.1f s%n", packets, (System.nanoTime() - start) / 1e9);
+        } finally {
+            replayer.close();
+        }
+    }
+}
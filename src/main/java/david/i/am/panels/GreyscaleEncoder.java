@@ -0,0 +1,238 @@
+package david.i.am.panels;
+
+import david.i.am.panels.CommunicationCreator.CommandVals;
+import java.util.Arrays;
+
+/**
+ * Writes greyscale frames as only what changed, from a shadow copy of what one panel holds.
+ * <p>
+ * A greyscale upload stages all nine columns with STAGE_GREY_COL, then shows them with
+ * DRAW_GREY_COL_BUFFER: 345 bytes, however little of the picture changed. The encoder
+ * keeps what the display shows and what was last staged, and writes the cheapest of:
+ * <ul>
+ *   <li>STAGE_GREY_COL for the columns that need staging, then DRAW_GREY_COL_BUFFER
+ *       (38 bytes a column, plus 3);</li>
+ *   <li>SET_PIXEL_COLUMN for each column that changed, then FLUSH_FRAMEBUFFER
+ *       (9 bytes a column, plus 3), when every changed column is only off (0) and
+ *       fully on (255), the two levels a pixel column can set;</li>
+ *   <li>one DRAW bitmap (42 bytes), when the whole picture is off and fully on.</li>
+ * </ul>
+ * Whether the firmware keeps its staging buffer after DRAW_GREY_COL_BUFFER or clears
+ * it is not documented. Unless told it keeps it, the encoder only skips staging columns
+ * that read the same either way: black, and black when last staged. A frame that does
+ * not stage every column means different things in the two cases and goes out as is.
+ * <p>
+ * Until a full upload has been written, and after anything that may have changed the
+ * device behind the encoder's back (a reconnect, a command, a failed write), frames go
+ * out as submitted; see {@link #invalidate()}. Monochrome DRAW frames go out as is and
+ * update the shadow. Anything else goes out as is and invalidates it.
+ * <p>
+ * Writer thread only.
+ */
+final class GreyscaleEncoder {
+
+    static final int COLUMNS = ExternalFrameService.COLUMNS;
+    static final int ROWS = ExternalFrameService.ROWS;
+    static final int ON = 0xFF; // the level of a lit LED in DRAW and SET_PIXEL_COLUMN
+    static final int DRAW_BYTES = (COLUMNS * ROWS + 7) / 8; // one bit per LED
+    static final int PIXEL_COLUMN_BYTES = (ROWS + 7) / 8; // one bit per row
+    private static final int HEADER = PanelFrame.HEADER_LENGTH;
+    private static final int STAGE_COST = HEADER + 1 + ROWS;
+    private static final int PIXEL_COLUMN_COST = HEADER + 1 + PIXEL_COLUMN_BYTES;
+    private static final int DRAW_COST = HEADER + DRAW_BYTES;
+
+    private volatile boolean stagingKept;
+    private boolean known; // shown and staged match the device
+    private final byte[] shown = new byte[COLUMNS * ROWS]; // column by column, as uploaded
+    private final byte[] staged = new byte[COLUMNS * ROWS]; // as staged, if the firmware keeps it
+    private final byte[] target = new byte[COLUMNS * ROWS];
+    private final boolean[] columnStaged = new boolean[COLUMNS];
+    private final PanelFrame delta = new PanelFrame(COLUMNS * STAGE_COST + HEADER, COLUMNS + 1);
+
+    /**
+     * @param stagingKept True if the firmware keeps its staging buffer after
+     *                    DRAW_GREY_COL_BUFFER, so unchanged columns need no restaging.
+     */
+    void setStagingKept(boolean stagingKept) {
+        this.stagingKept = stagingKept;
+    }
+
+    /**
+     * Forgets what the device holds; the next greyscale frame goes out in full.
+     */
+    void invalidate() {
+        known = false;
+    }
+
+    /**
+     * Accounts for {@code frame} as written from now on.
+     *
+     * @return the packets to write instead: {@code frame} itself, or a frame owned by
+     *         the encoder, valid until the next call, that shows the same picture.
+     */
+    PanelFrame encode(PanelFrame frame) {
+        if (isGreyscaleUpload(frame)) {
+            return encodeGreyscale(frame);
+        }
+        if (isDraw(frame)) {
+            if (known) {
+                byte[] data = frame.array();
+                int bitmap = frame.packetOffset(0) + HEADER;
+                for (int column = 0; column < COLUMNS; column++) {
+                    for (int row = 0; row < ROWS; row++) {
+                        int bit = row * COLUMNS + column;
+                        shown[column * ROWS + row] = (byte) ((data[bitmap + (bit >>> 3)] >> (bit & 7) & 1) != 0 ? ON : 0);
+                    }
+                }
+            }
+            return frame;
+        }
+        known = false;
+        return frame;
+    }
+
+    private PanelFrame encodeGreyscale(PanelFrame frame) {
+        Arrays.fill(columnStaged, false);
+        byte[] data = frame.array();
+        for (int i = 0; i < frame.packetCount() - 1; i++) {
+            int payload = frame.packetOffset(i) + HEADER;
+            int column = data[payload];
+            System.arraycopy(data, payload + 1, target, column * ROWS, ROWS);
+            columnStaged[column] = true;
+        }
+        boolean complete = true;
+        for (boolean column : columnStaged) {
+            complete &= column;
+        }
+        boolean kept = stagingKept;
+        if (!complete && !kept) {
+            known = false;
+            return frame;
+        }
+        if (!known) {
+            if (complete) {
+                System.arraycopy(target, 0, shown, 0, target.length);
+                System.arraycopy(target, 0, staged, 0, target.length);
+                known = true;
+            }
+            return frame;
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            if (!columnStaged[column]) {
+                System.arraycopy(staged, column * ROWS, target, column * ROWS, ROWS);
+            }
+        }
+
+        int stageColumns = 0;
+        int changedColumns = 0;
+        boolean changesBinary = true;
+        boolean allBinary = true;
+        for (int column = 0; column < COLUMNS; column++) {
+            if (needsStaging(column, kept)) {
+                stageColumns++;
+            }
+            boolean binary = isBinary(column);
+            allBinary &= binary;
+            if (!Arrays.equals(target, column * ROWS, (column + 1) * ROWS, shown, column * ROWS, (column + 1) * ROWS)) {
+                changedColumns++;
+                changesBinary &= binary;
+            }
+        }
+        int stageCost = stageColumns * STAGE_COST + HEADER;
+        int pixelCost = changesBinary ? changedColumns * PIXEL_COLUMN_COST + HEADER : Integer.MAX_VALUE;
+        int drawCost = allBinary ? DRAW_COST : Integer.MAX_VALUE;
+
+        delta.clear();
+        if (stageCost <= pixelCost && stageCost <= drawCost) {
+            for (int column = 0; column < COLUMNS; column++) {
+                if (needsStaging(column, kept)) {
+                    int start = delta.reserve(CommandVals.STAGE_GREY_COL, ROWS + 1);
+                    delta.array()[start] = (byte) column;
+                    System.arraycopy(target, column * ROWS, delta.array(), start + 1, ROWS);
+                }
+            }
+            delta.reserve(CommandVals.DRAW_GREY_COL_BUFFER, 0);
+            System.arraycopy(target, 0, staged, 0, target.length);
+        } else if (pixelCost <= drawCost) {
+            for (int column = 0; column < COLUMNS; column++) {
+                if (!Arrays.equals(target, column * ROWS, (column + 1) * ROWS, shown, column * ROWS, (column + 1) * ROWS)) {
+                    int start = delta.reserve(CommandVals.SET_PIXEL_COLUMN, PIXEL_COLUMN_BYTES + 1);
+                    byte[] packet = delta.array();
+                    packet[start] = (byte) column;
+                    for (int row = 0; row < ROWS; row++) {
+                        if (target[column * ROWS + row] != 0) {
+                            packet[start + 1 + (row >>> 3)] |= (byte) (1 << (row & 7));
+                        }
+                    }
+                }
+            }
+            delta.reserve(CommandVals.FLUSH_FRAMEBUFFER, 0);
+        } else {
+            int start = delta.reserve(CommandVals.DRAW, DRAW_BYTES);
+            byte[] packet = delta.array();
+            for (int column = 0; column < COLUMNS; column++) {
+                for (int row = 0; row < ROWS; row++) {
+                    if (target[column * ROWS + row] != 0) {
+                        int bit = row * COLUMNS + column;
+                        packet[start + (bit >>> 3)] |= (byte) (1 << (bit & 7));
+                    }
+                }
+            }
+        }
+        System.arraycopy(target, 0, shown, 0, target.length);
+        return delta;
+    }
+
+    /**
+     * A column can go unstaged if the staging buffer holds it whether or not the firmware cleared it.
+     */
+    private boolean needsStaging(int column, boolean kept) {
+        int from = column * ROWS;
+        int to = from + ROWS;
+        if (!Arrays.equals(target, from, to, staged, from, to)) {
+            return true;
+        }
+        if (kept) {
+            return false;
+        }
+        for (int led = from; led < to; led++) {
+            if (target[led] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBinary(int column) {
+        for (int led = column * ROWS; led < (column + 1) * ROWS; led++) {
+            if (target[led] != 0 && (target[led] & 0xFF) != ON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true for STAGE_GREY_COL packets of whole columns followed by one DRAW_GREY_COL_BUFFER.
+     */
+    private static boolean isGreyscaleUpload(PanelFrame frame) {
+        int last = frame.packetCount() - 1;
+        if (last < 1 || frame.packetCommand(last) != CommandVals.DRAW_GREY_COL_BUFFER.getValue()) {
+            return false;
+        }
+        for (int i = 0; i < last; i++) {
+            if (frame.packetCommand(i) != CommandVals.STAGE_GREY_COL.getValue()
+                || frame.packetLength(i) != STAGE_COST
+                || (frame.array()[frame.packetOffset(i) + HEADER] & 0xFF) >= COLUMNS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDraw(PanelFrame frame) {
+        return frame.packetCount() == 1
+            && frame.packetCommand(0) == CommandVals.DRAW.getValue()
+            && frame.packetLength(0) == DRAW_COST;
+    }
+}
@@ -0,0 +1,136 @@
+package david.i.am.panels;
+
+import java.util.Arrays;
+
+/**
+ * One profile's place in the {@link Compositor}: what it draws, one {@link LayerPanel}
+ * per panel, and how that is blended over the layers below.
+ * <p>
+ * A layer covers its region, a rectangle of LEDs, and nothing outside it. Inside, each
+ * LED is blended with its alpha, the layer's opacity times the mask's value for that
+ * LED when there is a mask. With {@code blackTransparent} set, LEDs the profile left
+ * black let the layers below show through, which is what a meter drawn over an
+ * animation wants. Settings may be changed at any time and apply from the next frame.
+ */
+public class Layer {
+
+    private static final int COLUMNS = LayerPanel.COLUMNS;
+    private static final int ROWS = LayerPanel.ROWS;
+
+    private final CanvasService service;
+    private volatile int opacity = 255;
+    private volatile byte[] mask; // alpha per LED, column by column; null for none
+    private volatile int[] region = {0, 0, COLUMNS, ROWS}; // first column, first row, columns, rows
+    private volatile boolean blackTransparent;
+    private final int onLevel;
+    private volatile LayerPanel[] surfaces = new LayerPanel[0]; // one per panel, grown under surfacesLock
+    private final Object surfacesLock = new Object();
+
+    /**
+     * @param onLevel The level of a lit LED when the profile draws DRAW bitmaps, 0-255.
+     */
+    public Layer(CanvasService service, int onLevel) {
+        this.service = service;
+        this.onLevel = checkLevel(onLevel);
+    }
+
+    public CanvasService getService() {
+        return service;
+    }
+
+    /**
+     * @param opacity 0 (invisible) to 255 (opaque).
+     */
+    public void setOpacity(int opacity) {
+        this.opacity = checkLevel(opacity);
+    }
+
+    public int getOpacity() {
+        return opacity;
+    }
+
+    /**
+     * @param mask Alpha per LED, 0-255, column by column ({@value LayerPanel#ROWS} per column);
+     *             null to blend every LED at the layer's opacity.
+     */
+    public void setMask(byte[] mask) {
+        if (mask != null && mask.length != COLUMNS * ROWS) {
+            throw new IllegalArgumentException("A mask has " + COLUMNS * ROWS + " values, not " + mask.length);
+        }
+        this.mask = mask != null ? mask.clone() : null;
+    }
+
+    /**
+     * Limits the layer to a rectangle of LEDs, the same on every panel.
+     */
+    public void setRegion(int firstColumn, int firstRow, int columns, int rows) {
+        if (firstColumn < 0 || firstRow < 0 || columns < 0 || rows < 0
+            || firstColumn + columns > COLUMNS || firstRow + rows > ROWS) {
+            throw new IllegalArgumentException("Region " + firstColumn + "," + firstRow + " " + columns + "x" + rows
+                + " is not within " + COLUMNS + "x" + ROWS);
+        }
+        this.region = new int[]{firstColumn, firstRow, columns, rows};
+    }
+
+    public void setBlackTransparent(boolean blackTransparent) {
+        this.blackTransparent = blackTransparent;
+    }
+
+    /**
+     * Lets the profile draw this layer's part of panel {@code index}.
+     */
+    void render(int index, int count) {
+        service.show(surface(index), index, count);
+    }
+
+    /**
+     * Blends this layer's image on panel {@code index} over {@code levels}, column by column.
+     */
+    void blendOnto(int index, byte[] levels) {
+        int alphaScale = opacity;
+        if (alphaScale == 0) {
+            return;
+        }
+        byte[] image = surface(index).levels();
+        byte[] alphas = mask;
+        int[] area = region;
+        boolean keyed = blackTransparent;
+        for (int column = area[0]; column < area[0] + area[2]; column++) {
+            for (int row = area[1]; row < area[1] + area[3]; row++) {
+                int led = column * ROWS + row;
+                int level = image[led] & 0xFF;
+                if (keyed && level == 0) {
+                    continue;
+                }
+                int alpha = alphas == null ? alphaScale : alphaScale * (alphas[led] & 0xFF) / 255;
+                int below = levels[led] & 0xFF;
+                levels[led] = (byte) (below + (level - below) * alpha / 255);
+            }
+        }
+    }
+
+    private LayerPanel surface(int index) {
+        LayerPanel[] current = surfaces;
+        if (index < current.length) {
+            return current[index];
+        }
+        synchronized (surfacesLock) {
+            current = surfaces;
+            if (index >= current.length) {
+                LayerPanel[] grown = Arrays.copyOf(current, index + 1);
+                for (int i = current.length; i < grown.length; i++) {
+                    grown[i] = new LayerPanel(service.getProfileName() + "-" + i, onLevel);
+                }
+                surfaces = current = grown;
+            }
+            return current[index];
+        }
+    }
+
+    private static int checkLevel(int level) {
+        if (level < 0 || level > 255) {
+            throw new IllegalArgumentException("Levels are 0-255, not " + level);
+        }
+        return level;
+    }
+}
@@ -0,0 +1,84 @@
+package david.i.am.panels;
+
+/**
+ * One panel's worth of a compositor {@link Layer}: a 9 x 34 greyscale image that a
+ * profile draws on as if it were the panel itself.
+ * <p>
+ * Frames handed to it are decoded instead of written: DRAW bitmaps set each lit LED
+ * to the layer's on level and every other LED to black, and greyscale uploads
+ * (STAGE_GREY_COL then DRAW_GREY_COL_BUFFER) set the levels column by column, as
+ * the firmware would. An image stays until the next frame replaces it, so a profile
+ * that skips a frame leaves its last image in the composite. Commands are ignored.
+ * <p>
+ * Drawn and read on the render thread of the panel it stands for only.
+ */
+public class LayerPanel extends CommunicationCreator {
+
+    public static final int COLUMNS = ExternalFrameService.COLUMNS;
+    public static final int ROWS = ExternalFrameService.ROWS;
+
+    private final int onLevel;
+    private final byte[] levels = new byte[COLUMNS * ROWS]; // column by column, as uploaded
+    private final byte[] staged = new byte[COLUMNS * ROWS];
+
+    /**
+     * @param onLevel The level of a lit LED in a DRAW bitmap, 0-255.
+     */
+    LayerPanel(String name, int onLevel) {
+        super(name);
+        this.onLevel = onLevel;
+    }
+
+    @Override
+    public void sendFrame(PanelFrame frame) {
+        byte[] data = frame.array();
+        for (int i = 0; i < frame.packetCount(); i++) {
+            int payload = frame.packetOffset(i) + PanelFrame.HEADER_LENGTH;
+            int length = frame.packetLength(i) - PanelFrame.HEADER_LENGTH;
+            byte command = frame.packetCommand(i);
+            if (command == CommandVals.DRAW.getValue()) {
+                decodeDraw(data, payload, length);
+            } else if (command == CommandVals.STAGE_GREY_COL.getValue() && length > 0) {
+                int column = data[payload] & 0xFF;
+                if (column < COLUMNS) {
+                    System.arraycopy(data, payload + 1, staged, column * ROWS, Math.min(ROWS, length - 1));
+                }
+            } else if (command == CommandVals.DRAW_GREY_COL_BUFFER.getValue()) {
+                System.arraycopy(staged, 0, levels, 0, levels.length);
+            }
+        }
+    }
+
+    @Override
+    public void sendDraw(byte[] drawData) {
+        decodeDraw(drawData, 0, drawData.length);
+    }
+
+    /**
+     * A DRAW bitmap holds one bit per LED, row by row, least significant bit first.
+     */
+    private void decodeDraw(byte[] data, int offset, int length) {
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int bit = row * COLUMNS + column;
+                boolean lit = (bit >>> 3) < length && (data[offset + (bit >>> 3)] >> (bit & 7) & 1) != 0;
+                levels[column * ROWS + row] = (byte) (lit ? onLevel : 0);
+            }
+        }
+    }
+
+    /**
+     * Layers draw whenever the compositor does; it asks the real panel.
+     */
+    @Override
+    public boolean isFrameDue() {
+        return true;
+    }
+
+    /**
+     * @return the image, column by column, {@link #ROWS} levels each.
+     */
+    byte[] levels() {
+        return levels;
+    }
+}
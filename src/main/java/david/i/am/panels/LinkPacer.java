@@ -0,0 +1,127 @@
+package david.i.am.panels;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spaces the packets of panel frames by what the device was measured to absorb,
+ * rather than by a fixed sleep.
+ * <p>
+ * The spacing is the minimum time between the starts of two consecutive frame
+ * packets. It starts at a conservative default, is set from a startup calibration
+ * against the device ({@link #calibrate}), and is widened again if a write fails.
+ * A widened spacing narrows back towards the calibrated one after every
+ * {@value #RECOVERY_PACKETS} packets written without a failure, so one bad write
+ * does not slow the port for good.
+ * Time spent writing and draining a packet counts towards the spacing, so a link
+ * that is already slower than the firmware is never slowed down further.
+ * <p>
+ * Also keeps smoothed link throughput and frame write times, from which
+ * {@link #getMaxFrameRate()} reports the highest frame rate the link sustains.
+ * <p>
+ * Pacing methods are called from the writer thread only; the getters from anywhere.
+ */
+final class LinkPacer {
+
+    static final long DEFAULT_PACKET_SPACING_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    static final long MIN_PACKET_SPACING_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    static final long MAX_PACKET_SPACING_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    static final int RECOVERY_PACKETS = 64;
+    private static final double SMOOTHING = 0.2; // weight of the newest measurement
+
+    private volatile long packetSpacingNanos = DEFAULT_PACKET_SPACING_NANOS;
+    private volatile long calibratedSpacingNanos = DEFAULT_PACKET_SPACING_NANOS;
+    private int cleanPackets; // writer thread only: packets written since the last failure or recovery step
+    private long lastPacketStartNanos = Long.MIN_VALUE / 2; // writer thread only
+    private volatile double bytesPerSecond;
+    private volatile double frameNanos;
+
+    /**
+     * Sets the spacing from a measured per-packet processing time, plus a 25% margin.
+     */
+    void calibrate(long perPacketNanos) {
+        calibratedSpacingNanos = clamp(perPacketNanos + perPacketNanos / 4);
+        packetSpacingNanos = calibratedSpacingNanos;
+        cleanPackets = 0;
+    }
+
+    /**
+     * Doubles the spacing after a failed or partial write.
+     */
+    void backOff() {
+        packetSpacingNanos = clamp(packetSpacingNanos * 2);
+        cleanPackets = 0;
+    }
+
+    /**
+     * Waits until the next packet may start, then marks it as started.
+     *
+     * @return the start time of the packet.
+     */
+    long awaitSlot() throws InterruptedException {
+        long now = System.nanoTime();
+        long due = lastPacketStartNanos + packetSpacingNanos;
+        while (due - now > 0) {
+            LockSupport.parkNanos(due - now);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            now = System.nanoTime();
+        }
+        lastPacketStartNanos = now;
+        return now;
+    }
+
+    /**
+     * Records a packet that has left the host: {@code bytes} written between
+     * {@code startNanos} and the moment the output queue drained.
+     */
+    void packetWritten(int bytes, long startNanos, long drainedNanos) {
+        long elapsed = drainedNanos - startNanos;
+        if (elapsed > 0) {
+            bytesPerSecond = smooth(bytesPerSecond, bytes * 1e9 / elapsed);
+        }
+        long spacing = packetSpacingNanos;
+        if (spacing > calibratedSpacingNanos && ++cleanPackets >= RECOVERY_PACKETS) {
+            // A quarter narrower at a time: a doubling takes a few clean runs to undo
+            packetSpacingNanos = Math.max(calibratedSpacingNanos, spacing - spacing / 4);
+            cleanPackets = 0;
+        }
+    }
+
+    /**
+     * Records a whole frame, from the start of its first packet. The next frame cannot
+     * start before the spacing after the last packet has passed, so that counts too.
+     */
+    void frameWritten(long startNanos, long endNanos) {
+        long end = Math.max(endNanos, lastPacketStartNanos + packetSpacingNanos);
+        frameNanos = smooth(frameNanos, end - startNanos);
+    }
+
+    long getPacketSpacingNanos() {
+        return packetSpacingNanos;
+    }
+
+    /**
+     * @return the smoothed rate at which packets drain to the device, 0 before the first write.
+     */
+    double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return how many frames like the recent ones the link can carry per second, 0 before the first frame.
+     */
+    double getMaxFrameRate() {
+        double nanos = frameNanos;
+        return nanos > 0 ? 1e9 / nanos : 0;
+    }
+
+    private static double smooth(double average, double sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private static long clamp(long spacing) {
+        return Math.max(MIN_PACKET_SPACING_NANOS, Math.min(MAX_PACKET_SPACING_NANOS, spacing));
+    }
+}
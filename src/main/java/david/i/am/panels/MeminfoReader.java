@@ -0,0 +1,151 @@
+package david.i.am.panels;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Re-reads /proc/meminfo into a reusable direct buffer and picks out the handful
+ * of keys the RAM panel needs, matching prefixes on the raw bytes. Parsing stops
+ * at the line that completes the set, so the rest of the file (some 50 lines on
+ * current kernels) is never looked at. Values are in kB, as the kernel reports them.
+ * <p>
+ * Not thread-safe; the owner serialises calls.
+ */
+public class MeminfoReader implements Closeable {
+
+    public static final int MEM_TOTAL = 0;
+    public static final int MEM_FREE = 1;
+    public static final int MEM_AVAILABLE = 2;
+    public static final int BUFFERS = 3;
+    public static final int CACHED = 4;
+    public static final int SWAP_TOTAL = 5;
+    public static final int SWAP_FREE = 6;
+    public static final int KEYS = 7;
+
+    private static final byte[][] PREFIXES = {
+        ascii("MemTotal:"),
+        ascii("MemFree:"),
+        ascii("MemAvailable:"),
+        ascii("Buffers:"),
+        ascii("Cached:"),
+        ascii("SwapTotal:"),
+        ascii("SwapFree:"),
+    };
+    private static final int ALL_FOUND = (1 << KEYS) - 1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private final long[] values = new long[KEYS];
+
+    public MeminfoReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(4096);
+    }
+
+    /**
+     * Reads and parses the file again.
+     */
+    public void sample() throws IOException {
+        int limit = readFully();
+        Arrays.fill(values, 0L);
+        int found = 0;
+        int pos = 0;
+        while (pos < limit && found != ALL_FOUND) {
+            int lineEnd = pos;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            for (int key = 0; key < KEYS; key++) {
+                if ((found & (1 << key)) == 0 && startsWith(pos, lineEnd, PREFIXES[key])) {
+                    values[key] = number(pos + PREFIXES[key].length, lineEnd);
+                    found |= 1 << key;
+                    break;
+                }
+            }
+            pos = lineEnd + 1;
+        }
+        if ((found & (1 << MEM_TOTAL)) == 0) {
+            throw new IOException("No MemTotal in " + path);
+        }
+    }
+
+    /**
+     * @return the value of {@code key} in kB, 0 if the kernel did not report it.
+     */
+    public long get(int key) {
+        return values[key];
+    }
+
+    /**
+     * @return memory in use (total minus available) as a percentage of total.
+     */
+    public int usedPercent() {
+        long total = values[MEM_TOTAL];
+        long available = values[MEM_AVAILABLE];
+        return total > 0 ? (int) ((total - available) * 100 / total) : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readFully() throws IOException {
+        buffer.clear();
+        long position = 0;
+        while (true) {
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+        return (int) position;
+    }
+
+    private long number(int pos, int lineEnd) {
+        int p = pos;
+        while (p < lineEnd && buffer.get(p) == ' ') {
+            p++;
+        }
+        long value = 0;
+        while (p < lineEnd) {
+            byte b = buffer.get(p++);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private boolean startsWith(int pos, int lineEnd, byte[] prefix) {
+        if (lineEnd - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
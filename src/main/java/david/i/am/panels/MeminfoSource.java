@@ -0,0 +1,45 @@
+package david.i.am.panels;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * /proc/meminfo, published as an immutable {@link RamService.Ram}.
+ */
+@Component
+public class MeminfoSource extends MetricSource<RamService.Ram> {
+
+    private final Path path;
+    private MeminfoReader reader; // guarded by this
+
+    @Autowired
+    public MeminfoSource(@Value("${panels.metrics.meminfo.refresh-ms:1000}") long refreshMs) {
+        this(Path.of(RamService.PROC_MEMINFO), refreshMs);
+    }
+
+    MeminfoSource(Path path, long refreshMs) {
+        super("meminfo", refreshMs, Set.of("ram"));
+        this.path = path;
+    }
+
+    @Override
+    protected synchronized RamService.Ram sample() throws IOException {
+        if (reader == null) {
+            reader = new MeminfoReader(path);
+        }
+        reader.sample();
+        return RamService.toRam(reader);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package david.i.am.panels;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Refreshes every {@link MetricSource} on one background thread.
+ * <p>
+ * The sampler wakes up every {@code panels.metrics.tick-ms} and refreshes the sources
+ * that are both in use by the active profile and older than their own refresh interval.
+ * Sources no active profile uses are not read at all; when one comes back into use it is
+ * refreshed on the next tick rather than after a full interval. While the composite
+ * profile is active, the sources of its layers' profiles are in use.
+ */
+@Slf4j
+@Service
+public class MetricSampler {
+
+    private final List<MetricSource<?>> sources;
+    private final ProfileState profileState;
+    private final List<String> layerProfiles;
+    private final long tickMs;
+    private final boolean[] inUse;
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public MetricSampler(List<MetricSource<?>> sources, ProfileState profileState, Compositor compositor,
+                         @Value("${panels.metrics.tick-ms:250}") long tickMs) {
+        this.sources = sources;
+        this.profileState = profileState;
+        this.layerProfiles = compositor != null ? compositor.getLayerProfiles() : List.of();
+        this.tickMs = tickMs;
+        this.inUse = new boolean[sources.size()];
+    }
+
+    MetricSampler(List<MetricSource<?>> sources, ProfileState profileState, long tickMs) {
+        this(sources, profileState, null, tickMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metric-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::tick, 0, tickMs, TimeUnit.MILLISECONDS);
+        for (MetricSource<?> source : sources) {
+            log.info("Metric source {} refreshes every {} ms", source.getName(), source.getRefreshMs());
+        }
+    }
+
+    void tick() {
+        String activeProfile = profileState.getActiveProfile();
+        long now = System.nanoTime();
+        for (int i = 0; i < sources.size(); i++) {
+            MetricSource<?> source = sources.get(i);
+            boolean used = isUsed(source, activeProfile);
+            if (used && !inUse[i]) {
+                source.expire();
+            }
+            inUse[i] = used;
+            if (used && source.isDue(now)) {
+                source.refresh(now);
+            }
+        }
+    }
+
+    private boolean isUsed(MetricSource<?> source, String activeProfile) {
+        if (source.isUsedBy(activeProfile)) {
+            return true;
+        }
+        if (Compositor.PROFILE.equals(activeProfile)) {
+            for (String layer : layerProfiles) {
+                if (source.isUsedBy(layer)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        for (MetricSource<?> source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                log.warn("Failed to close metric source {}", source.getName(), e);
+            }
+        }
+    }
+}
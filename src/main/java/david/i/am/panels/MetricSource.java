@@ -0,0 +1,153 @@
+package david.i.am.panels;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One system metric (a /proc or /sys file) that is sampled in the background by
+ * {@link MetricSampler} and read by renderers.
+ * <p>
+ * Each source has its own refresh interval and the set of profiles that draw it;
+ * the sampler only refreshes a source while one of those profiles is active.
+ * Renderers call {@link #latest()} and never touch the file themselves.
+ * <p>
+ * Bound to a {@link MeterRegistry}, each source times its samples (read and parse)
+ * and counts the failed ones, tagged with the source name.
+ *
+ * @param <T> The published snapshot. Snapshots are immutable, or (for the CPU
+ *            load) publish their own consistent views, so readers need no locking.
+ */
+@Slf4j
+public abstract class MetricSource<T> implements MeterBinder {
+
+    @Getter
+    private final String name;
+    @Getter
+    private final long refreshMs;
+    private final Set<String> profiles;
+
+    private volatile T latest;
+    private long sampledAtNanos; // sampler thread only
+    private boolean sampled; // sampler thread only: sampledAtNanos is set, whether or not the sample had a value
+    private boolean failing; // sampler thread only
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Timer sampleTimer;
+
+    protected MetricSource(String name, long refreshMs, Set<String> profiles) {
+        this.name = name;
+        this.refreshMs = refreshMs;
+        this.profiles = profiles;
+    }
+
+    /**
+     * @return the most recent snapshot, or null if the source has not been sampled yet.
+     */
+    public T latest() {
+        return latest;
+    }
+
+    /**
+     * @return true if {@code profile} draws this source.
+     */
+    public boolean isUsedBy(String profile) {
+        return profile != null && profiles.contains(profile);
+    }
+
+    /**
+     * Reads the underlying file and builds the next snapshot. Called on the sampler thread only.
+     */
+    protected abstract T sample() throws IOException;
+
+    /**
+     * Called on the sampler thread when the source comes back from idle, before it is
+     * refreshed. Sources that publish the difference between two samples start over
+     * here, rather than diff against one taken before the idle period.
+     */
+    protected void resume() {
+        // nothing carries over by default
+    }
+
+    /**
+     * @return true while the source only has a baseline to diff the next sample against,
+     *         and nothing to publish yet; it stays due until it has.
+     */
+    protected boolean isPriming() {
+        return false;
+    }
+
+    /**
+     * @return true if the last sample is older than the refresh interval, or there is none.
+     *         A sample that found nothing (a null snapshot) counts; a failed one does too.
+     */
+    boolean isDue(long nowNanos) {
+        return !sampled || nowNanos - sampledAtNanos >= refreshMs * 1_000_000L;
+    }
+
+    /**
+     * Forgets when the source was last sampled, so the next check refreshes it
+     * straight away, and lets it {@link #resume()}. Used when a source comes back from idle.
+     */
+    void expire() {
+        sampled = false;
+        resume();
+    }
+
+    /**
+     * Samples the source and publishes the result. A failed sample keeps the previous snapshot.
+     */
+    void refresh(long nowNanos) {
+        sampledAtNanos = nowNanos;
+        sampled = true;
+        long start = System.nanoTime();
+        try {
+            latest = sample();
+            sampled = !isPriming();
+            Timer timer = sampleTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            if (failing) {
+                log.info("Metric source {} recovered", name);
+                failing = false;
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            if (!failing) {
+                log.warn("Failed to sample metric source {}", name, e);
+                failing = true;
+            } else {
+                log.debug("Metric source {} still failing: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the number of samples that failed since startup.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        sampleTimer = Timer.builder("panels.metrics.sample")
+            .description("Time to read and parse a metric source").tag("source", name).register(registry);
+        FunctionCounter.builder("panels.metrics.sample.failures", this, MetricSource::getFailures)
+            .description("Samples of a metric source that failed").tag("source", name).register(registry);
+    }
+
+    /**
+     * Releases any open file handles.
+     */
+    public void close() throws IOException {
+        // nothing to release by default
+    }
+}
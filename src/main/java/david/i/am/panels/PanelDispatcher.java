@@ -0,0 +1,209 @@
+package david.i.am.panels;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Draws one frame of a {@link PanelService} on every panel at once.
+ * <p>
+ * Each panel is rendered on a thread of its own, so the time to draw a frame stays
+ * that of the slowest panel however many there are. All ports hold their mailboxes
+ * while rendering runs ({@link CommunicationCreator#holdFrames()}); once every panel
+ * is done, the barrier, all are released back to back, so the writer threads start
+ * presenting the same frame within microseconds of each other instead of one full
+ * render and write apart.
+ * <p>
+ * A {@link CanvasService} is moved on to its next frame ({@link CanvasService#nextFrame()}),
+ * then asked for each panel's part of its canvas. Any other
+ * profile draws a left and a right picture: those go to the first two panels, and
+ * further panels are left as they are.
+ * <p>
+ * The skew between the panels, the time between the first and the last of their
+ * frame writes completing, is measured at the start of the next dispatch across the
+ * panels that wrote a frame in between, when at least two did.
+ * <p>
+ * Render time is timed per profile and panel, counting only renders that submitted
+ * a frame; a render that finds its frame not due returns at once and would only
+ * drag the figures down.
+ */
+@Slf4j
+@Service
+public class PanelDispatcher implements MeterBinder {
+
+    private static final long RENDER_TIMEOUT_MS = 1000;
+    private static final double SMOOTHING = 0.2; // weight of the newest skew measurement
+
+    private final PanelRegistry panels;
+    private final List<PanelService> services;
+    private volatile Map<PanelService, Timer[]> renderTimers = Map.of(); // one per panel
+    private final ExecutorService[] renderers;
+    private final CompletableFuture<?>[] frames; // dispatching thread only
+
+    private final long[] framesWritten; // dispatching thread only
+    private volatile long lastSkewNanos;
+    private volatile double averageSkewNanos;
+    private volatile long maxSkewNanos;
+
+    public PanelDispatcher(PanelRegistry panels, List<PanelService> services) {
+        this.panels = panels;
+        this.services = services;
+        this.renderers = new ExecutorService[panels.size()];
+        for (int index = 0; index < renderers.length; index++) {
+            renderers[index] = renderer("panel-render-" + panels.get(index).getPortName());
+        }
+        this.frames = new CompletableFuture<?>[panels.size()];
+        this.framesWritten = new long[panels.size()];
+    }
+
+    private static ExecutorService renderer(String name) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Renders and presents one frame of {@code service} on every panel. Called by the
+     * {@link RenderLoop}, one frame at a time; returns once all panels have been submitted.
+     */
+    public void dispatch(PanelService service) {
+        recordSkew();
+        if (service instanceof CanvasService canvas) {
+            canvas.nextFrame();
+        }
+        int count = panels.size();
+        for (int index = 0; index < count; index++) {
+            panels.get(index).holdFrames();
+        }
+        try {
+            for (int index = 0; index < count; index++) {
+                int panel = index;
+                frames[index] = CompletableFuture.runAsync(() -> render(service, panel, count), renderers[index]);
+            }
+            CompletableFuture.allOf(frames).get(RENDER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error rendering {}", service.getProfileName(), e.getCause());
+        } catch (TimeoutException e) {
+            log.warn("Rendering {} took over {} ms; presenting what is ready", service.getProfileName(), RENDER_TIMEOUT_MS);
+        } finally {
+            for (int index = 0; index < count; index++) {
+                panels.get(index).releaseFrames();
+            }
+        }
+    }
+
+    private void render(PanelService service, int index, int count) {
+        CommunicationCreator panel = panels.get(index);
+        long submitted = panel.getFramesSubmitted();
+        long start = System.nanoTime();
+        if (service instanceof CanvasService canvas) {
+            canvas.show(panel, index, count);
+        } else if (index == 0) {
+            service.showLeft(panel);
+        } else if (index == 1) {
+            service.showRight(panel);
+        }
+        long end = System.nanoTime();
+        Timer[] timers = renderTimers.get(service);
+        if (timers != null && panel.getFramesSubmitted() != submitted) {
+            timers[index].record(end - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recordSkew() {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        int wrote = 0;
+        for (int index = 0; index < framesWritten.length; index++) {
+            CommunicationCreator panel = panels.get(index);
+            long written = panel.getFramesWritten();
+            if (written != framesWritten[index]) {
+                long writtenNanos = panel.getLastFrameWrittenNanos();
+                first = Math.min(first, writtenNanos);
+                last = Math.max(last, writtenNanos);
+                wrote++;
+            }
+            framesWritten[index] = written;
+        }
+        if (wrote >= 2) {
+            long skew = last - first;
+            lastSkewNanos = skew;
+            double average = averageSkewNanos;
+            averageSkewNanos = average == 0 ? skew : average + SMOOTHING * (skew - average);
+            maxSkewNanos = Math.max(maxSkewNanos, skew);
+        }
+    }
+
+    /**
+     * @return the skew between the panels for the most recent frame at least two of them wrote.
+     */
+    public long getLastSkewNanos() {
+        return lastSkewNanos;
+    }
+
+    /**
+     * @return the smoothed skew between the panels.
+     */
+    public double getAverageSkewNanos() {
+        return averageSkewNanos;
+    }
+
+    /**
+     * @return the largest skew seen since startup.
+     */
+    public long getMaxSkewNanos() {
+        return maxSkewNanos;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Map<PanelService, Timer[]> timers = new IdentityHashMap<>();
+        for (PanelService service : services) {
+            Timer[] perPanel = new Timer[panels.size()];
+            for (int index = 0; index < perPanel.length; index++) {
+                perPanel[index] = renderTimer(registry, service, panels.get(index).getPortName());
+            }
+            timers.put(service, perPanel);
+        }
+        renderTimers = timers;
+        Gauge.builder("panels.skew.last", this, d -> d.getLastSkewNanos() / 1e9)
+            .description("Skew between the panels for the last frame they wrote").baseUnit("seconds")
+            .register(registry);
+        Gauge.builder("panels.skew.average", this, d -> d.getAverageSkewNanos() / 1e9)
+            .description("Smoothed skew between the panels").baseUnit("seconds").register(registry);
+        Gauge.builder("panels.skew.max", this, d -> d.getMaxSkewNanos() / 1e9)
+            .description("Largest skew between the panels since startup").baseUnit("seconds").register(registry);
+    }
+
+    private static Timer renderTimer(MeterRegistry registry, PanelService service, String panel) {
+        return Timer.builder("panels.render")
+            .description("Time to render one frame of a profile")
+            .tag("profile", service.getProfileName())
+            .tag("panel", panel)
+            .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService renderer : renderers) {
+            renderer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package david.i.am.panels;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer holding one frame worth of ready-to-write command packets.
+ * Each packet is stored with its header and command byte in place, so the
+ * writer can hand the bytes straight to the port. Buffers grow on demand and
+ * are never shrunk, so a frame that is cleared and refilled every tick does
+ * not allocate once it has reached its steady-state size.
+ */
+public class PanelFrame {
+
+    static final byte HEADER_0 = (byte) 0x32;
+    static final byte HEADER_1 = (byte) 0xAC;
+    static final int HEADER_LENGTH = 3; // Header (2 bytes) + Command ID
+
+    private byte[] data;
+    private int length;
+    private int[] packetEnds;
+    private int packetCount;
+
+    public PanelFrame() {
+        this(64, 2);
+    }
+
+    public PanelFrame(int byteCapacity, int packetCapacity) {
+        this.data = new byte[byteCapacity];
+        this.packetEnds = new int[packetCapacity];
+    }
+
+    /**
+     * Empties the frame, keeping the underlying buffers.
+     *
+     * @return this frame.
+     */
+    public PanelFrame clear() {
+        length = 0;
+        packetCount = 0;
+        return this;
+    }
+
+    /**
+     * Appends a packet for the given command.
+     *
+     * @param command The command to send.
+     * @param payload The payload (can be null).
+     * @return this frame.
+     */
+    public PanelFrame add(CommunicationCreator.CommandVals command, byte[] payload) {
+        return add(command, payload, 0, payload != null ? payload.length : 0);
+    }
+
+    /**
+     * Appends a packet for the given command, copying {@code payloadLength}
+     * bytes of the payload starting at {@code payloadOffset}.
+     *
+     * @return this frame.
+     */
+    public PanelFrame add(CommunicationCreator.CommandVals command, byte[] payload, int payloadOffset, int payloadLength) {
+        int start = reserve(command, payloadLength);
+        if (payloadLength > 0) {
+            System.arraycopy(payload, payloadOffset, data, start, payloadLength);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a packet whose payload is {@code count} integers packed 9 bits each,
+     * written straight behind the header with {@link BitUtils#packbits(int[], int, int, byte[], int)}.
+     *
+     * @return this frame.
+     */
+    public PanelFrame addPacked(CommunicationCreator.CommandVals command, int[] values, int offset, int count) {
+        int start = reserve(command, BitUtils.packedLength(count));
+        BitUtils.packbits(values, offset, count, data, start);
+        return this;
+    }
+
+    /**
+     * Appends a packet header for the given command and reserves room for its
+     * payload. The payload bytes are zeroed and left for the caller to fill in
+     * through {@link #array()} at the returned offset.
+     *
+     * @return the offset of the first payload byte in {@link #array()}.
+     */
+    public int reserve(CommunicationCreator.CommandVals command, int payloadLength) {
+        int start = length;
+        int end = start + HEADER_LENGTH + payloadLength;
+        ensureCapacity(end, packetCount + 1);
+        data[start] = HEADER_0;
+        data[start + 1] = HEADER_1;
+        data[start + 2] = command.getValue();
+        Arrays.fill(data, start + HEADER_LENGTH, end, (byte) 0);
+        length = end;
+        packetEnds[packetCount++] = end;
+        return start + HEADER_LENGTH;
+    }
+
+    /**
+     * Replaces the contents of this frame with a copy of another frame.
+     */
+    public void copyFrom(PanelFrame other) {
+        ensureCapacity(other.length, other.packetCount);
+        System.arraycopy(other.data, 0, data, 0, other.length);
+        System.arraycopy(other.packetEnds, 0, packetEnds, 0, other.packetCount);
+        length = other.length;
+        packetCount = other.packetCount;
+    }
+
+    /**
+     * @return true if both frames hold the same packets, byte for byte.
+     */
+    public boolean contentEquals(PanelFrame other) {
+        return packetCount == other.packetCount
+            && Arrays.equals(packetEnds, 0, packetCount, other.packetEnds, 0, other.packetCount)
+            && Arrays.equals(data, 0, length, other.data, 0, other.length);
+    }
+
+    public boolean isEmpty() {
+        return packetCount == 0;
+    }
+
+    public int packetCount() {
+        return packetCount;
+    }
+
+    /**
+     * @return the total number of bytes in the frame, headers included.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the backing array; only the first {@link #length()} bytes are valid.
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    public int packetOffset(int index) {
+        return index == 0 ? 0 : packetEnds[index - 1];
+    }
+
+    public int packetLength(int index) {
+        return packetEnds[index] - packetOffset(index);
+    }
+
+    public byte packetCommand(int index) {
+        return data[packetOffset(index) + 2];
+    }
+
+    private void ensureCapacity(int bytes, int packets) {
+        if (bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(bytes, data.length * 2));
+        }
+        if (packets > packetEnds.length) {
+            packetEnds = Arrays.copyOf(packetEnds, Math.max(packets, packetEnds.length * 2));
+        }
+    }
+}
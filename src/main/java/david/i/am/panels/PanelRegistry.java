@@ -0,0 +1,78 @@
+package david.i.am.panels;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+
+/**
+ * The panels in use, numbered left to right.
+ * <p>
+ * Each panel is its own {@link CommunicationCreator}: its own port, writer thread,
+ * mailbox and frame budget, so a slow or unplugged module holds up nothing but
+ * itself. The registry starts, stops and binds the meters of all of them; the
+ * number of panels is whatever is configured, one and up.
+ */
+public class PanelRegistry implements MeterBinder {
+
+    private final List<CommunicationCreator> panels;
+
+    public PanelRegistry(List<CommunicationCreator> panels) {
+        if (panels.isEmpty()) {
+            throw new IllegalArgumentException("At least one panel is needed");
+        }
+        this.panels = List.copyOf(panels);
+    }
+
+    /**
+     * @return the number of panels the canvas is spread across.
+     */
+    public int size() {
+        return panels.size();
+    }
+
+    /**
+     * @param index Position from the left, starting at 0.
+     */
+    public CommunicationCreator get(int index) {
+        return panels.get(index);
+    }
+
+    /**
+     * @return the position of the named panel, or -1 if there is none by that name.
+     */
+    public int indexOf(String name) {
+        for (int index = 0; index < panels.size(); index++) {
+            if (panels.get(index).getPortName().equals(name)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public List<CommunicationCreator> getPanels() {
+        return panels;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (CommunicationCreator panel : panels) {
+            panel.postConstruct();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (CommunicationCreator panel : panels) {
+            panel.bindTo(registry);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (CommunicationCreator panel : panels) {
+            panel.preDestroy();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package david.i.am.panels;
+
+/**
+ * The byte link to one LED matrix module, as {@link CommunicationCreator} uses it.
+ * <p>
+ * Implementations: {@link SerialPortTransport} for the real modules,
+ * {@link FakePanelTransport} to run without hardware, and {@link PtyTransport}
+ * to talk to a device emulator over a pseudo-terminal. {@code Configuration}
+ * picks one through {@code panels.transport.type}.
+ * <p>
+ * Writes block up to a write timeout and may be partial; reads never block. A link
+ * that can tell when response bytes arrive says so through {@link #setDataListener},
+ * so that its reads need not be polled for.
+ */
+public interface PanelTransport {
+
+    long DEFAULT_WRITE_TIMEOUT_MS = 1000;
+
+    /**
+     * @return the device name, e.g. /dev/ttyACM0, for logs and thread names.
+     */
+    String getName();
+
+    boolean isOpen();
+
+    /**
+     * Writes up to {@code length} bytes, blocking until they are handed to the link
+     * or the write timeout passes.
+     *
+     * @return the number of bytes written, fewer than {@code length} on timeout, -1 on error.
+     */
+    int write(byte[] buffer, int offset, int length);
+
+    /**
+     * Reads whatever response bytes have arrived, up to {@code length}, without blocking.
+     *
+     * @return the number of bytes read, -1 on error.
+     */
+    int read(byte[] buffer, int offset, int length);
+
+    /**
+     * Has {@code listener} called, on a thread of the link's, whenever response bytes arrive.
+     *
+     * @return false if this link cannot tell; its reads must then be polled.
+     */
+    default boolean setDataListener(Runnable listener) {
+        return false;
+    }
+
+    /**
+     * @return the number of response bytes ready to be read.
+     */
+    int bytesAvailable();
+
+    /**
+     * @return the number of written bytes still queued for the device, 0 if unknown.
+     */
+    int bytesAwaitingWrite();
+
+    void close();
+}
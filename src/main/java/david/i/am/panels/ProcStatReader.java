@@ -0,0 +1,276 @@
+package david.i.am.panels;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Re-reads /proc/stat into a reusable direct buffer and parses it by hand.
+ * <p>
+ * The file is opened once and every {@link #sample()} is a positional read from
+ * offset zero, which makes the kernel regenerate the content. Counters land in a
+ * preallocated {@code long[1 + cores][FIELDS]} matrix: row {@link #TOTAL_ROW} is
+ * the aggregate "cpu" line, rows 1..n are the per-core lines in file order. Once
+ * the buffer and matrix have grown to fit the machine, sampling allocates nothing.
+ * <p>
+ * Not thread-safe; the owner serialises calls to {@link #sample()} and the accessors.
+ */
+public class ProcStatReader implements Closeable {
+
+    public static final int USER = 0;
+    public static final int NICE = 1;
+    public static final int SYSTEM = 2;
+    public static final int IDLE = 3;
+    public static final int IOWAIT = 4;
+    public static final int IRQ = 5;
+    public static final int SOFTIRQ = 6;
+    public static final int STEAL = 7;
+    public static final int GUEST = 8;
+    public static final int GUEST_NICE = 9;
+    public static final int FIELDS = 10;
+
+    public static final int TOTAL_ROW = 0;
+
+    private static final byte[] CPU = ascii("cpu");
+    private static final byte[] INTR = ascii("intr ");
+    private static final byte[] CTXT = ascii("ctxt ");
+    private static final byte[] BTIME = ascii("btime ");
+    private static final byte[] PROCESSES = ascii("processes ");
+    private static final byte[] PROCS_RUNNING = ascii("procs_running ");
+    private static final byte[] PROCS_BLOCKED = ascii("procs_blocked ");
+
+    private final Path path;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private long[][] matrix;
+    private int[] coreIds;
+    private int coreCount;
+
+    private long interrupts;
+    private long contextSwitches;
+    private long bootTime;
+    private long processes;
+    private long procsRunning;
+    private long procsBlocked;
+
+    public ProcStatReader(Path path) throws IOException {
+        this(path, 32 * 1024, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param initialBufferSize Starting size of the read buffer; it doubles when the file does not fit.
+     * @param expectedCores     Number of per-core rows to preallocate; more are added if the file has them.
+     */
+    public ProcStatReader(Path path, int initialBufferSize, int expectedCores) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(initialBufferSize);
+        this.matrix = new long[1 + expectedCores][FIELDS];
+        this.coreIds = new int[expectedCores];
+    }
+
+    /**
+     * Reads and parses the file again.
+     */
+    public void sample() throws IOException {
+        parse(readFully());
+    }
+
+    public int coreCount() {
+        return coreCount;
+    }
+
+    /**
+     * @return the kernel's number for the core in row {@code core + 1}, e.g. 5 for "cpu5".
+     */
+    public int coreId(int core) {
+        return coreIds[core];
+    }
+
+    /**
+     * @return the counters of the aggregate "cpu" line, indexed by {@link #USER} .. {@link #GUEST_NICE}.
+     */
+    public long[] total() {
+        return matrix[TOTAL_ROW];
+    }
+
+    /**
+     * @return the counters of the {@code core}th per-core line (0-based, in file order).
+     */
+    public long[] core(int core) {
+        return matrix[core + 1];
+    }
+
+    /**
+     * @return the whole matrix; only rows 0..{@link #coreCount()} are valid.
+     */
+    public long[][] matrix() {
+        return matrix;
+    }
+
+    public long interrupts() {
+        return interrupts;
+    }
+
+    public long contextSwitches() {
+        return contextSwitches;
+    }
+
+    public long bootTime() {
+        return bootTime;
+    }
+
+    public long processes() {
+        return processes;
+    }
+
+    public long procsRunning() {
+        return procsRunning;
+    }
+
+    public long procsBlocked() {
+        return procsBlocked;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readFully() throws IOException {
+        buffer.clear();
+        long position = 0;
+        while (true) {
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            if (!buffer.hasRemaining()) {
+                // Rare: the file outgrew the buffer. Keep what was read and continue into a bigger one.
+                ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+        return (int) position;
+    }
+
+    private void parse(int limit) throws IOException {
+        int cores = 0;
+        int pos = 0;
+        while (pos < limit) {
+            int lineEnd = lineEnd(pos, limit);
+            if (startsWith(pos, lineEnd, CPU)) {
+                int p = pos + CPU.length;
+                int row;
+                if (p < lineEnd && buffer.get(p) == ' ') {
+                    row = TOTAL_ROW;
+                } else {
+                    row = ensureRow(++cores);
+                    long id = 0;
+                    while (p < lineEnd && isDigit(buffer.get(p))) {
+                        id = id * 10 + (buffer.get(p++) - '0');
+                    }
+                    coreIds[cores - 1] = (int) id;
+                }
+                parseFields(p, lineEnd, matrix[row]);
+            } else if (startsWith(pos, lineEnd, INTR)) {
+                interrupts = firstNumber(pos + INTR.length, lineEnd);
+            } else if (startsWith(pos, lineEnd, CTXT)) {
+                contextSwitches = firstNumber(pos + CTXT.length, lineEnd);
+            } else if (startsWith(pos, lineEnd, BTIME)) {
+                bootTime = firstNumber(pos + BTIME.length, lineEnd);
+            } else if (startsWith(pos, lineEnd, PROCESSES)) {
+                processes = firstNumber(pos + PROCESSES.length, lineEnd);
+            } else if (startsWith(pos, lineEnd, PROCS_RUNNING)) {
+                procsRunning = firstNumber(pos + PROCS_RUNNING.length, lineEnd);
+            } else if (startsWith(pos, lineEnd, PROCS_BLOCKED)) {
+                procsBlocked = firstNumber(pos + PROCS_BLOCKED.length, lineEnd);
+            }
+            pos = lineEnd + 1;
+        }
+        if (cores == 0) {
+            throw new IOException("No per-core lines in " + path);
+        }
+        coreCount = cores;
+    }
+
+    private void parseFields(int pos, int lineEnd, long[] row) {
+        int field = 0;
+        int p = pos;
+        while (field < FIELDS) {
+            while (p < lineEnd && buffer.get(p) == ' ') {
+                p++;
+            }
+            if (p >= lineEnd) {
+                break;
+            }
+            long value = 0;
+            while (p < lineEnd && isDigit(buffer.get(p))) {
+                value = value * 10 + (buffer.get(p++) - '0');
+            }
+            row[field++] = value;
+        }
+        // Older kernels report fewer columns
+        Arrays.fill(row, field, FIELDS, 0L);
+    }
+
+    private long firstNumber(int pos, int lineEnd) {
+        int p = pos;
+        while (p < lineEnd && !isDigit(buffer.get(p))) {
+            p++;
+        }
+        long value = 0;
+        while (p < lineEnd && isDigit(buffer.get(p))) {
+            value = value * 10 + (buffer.get(p++) - '0');
+        }
+        return value;
+    }
+
+    private int ensureRow(int row) {
+        if (row >= matrix.length) {
+            int oldLength = matrix.length;
+            matrix = Arrays.copyOf(matrix, Math.max(row + 1, oldLength * 2));
+            for (int i = oldLength; i < matrix.length; i++) {
+                matrix[i] = new long[FIELDS];
+            }
+            coreIds = Arrays.copyOf(coreIds, matrix.length - 1);
+        }
+        return row;
+    }
+
+    private int lineEnd(int pos, int limit) {
+        int p = pos;
+        while (p < limit && buffer.get(p) != '\n') {
+            p++;
+        }
+        return p;
+    }
+
+    private boolean startsWith(int pos, int lineEnd, byte[] prefix) {
+        if (lineEnd - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
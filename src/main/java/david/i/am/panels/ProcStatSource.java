@@ -0,0 +1,106 @@
+package david.i.am.panels;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * /proc/stat, published as a {@link CpuLoad}. The load object is updated in place
+ * and hands out consistent copies through its own sequence number, so sampling
+ * stays allocation-free. Coming back from idle, the load starts over: the first
+ * sample is a baseline, and the next tick publishes load measured from it.
+ */
+@Slf4j
+@Component
+public class ProcStatSource extends MetricSource<CpuLoad> {
+
+    private final Path path;
+    @Getter
+    private final CpuLayout layout;
+    @Getter
+    private final CpuLoad load;
+    private ProcStatReader reader; // guarded by this
+
+    @Autowired
+    public ProcStatSource(@Value("${panels.metrics.stat.refresh-ms:1000}") long refreshMs,
+                          @Value("${panels.cpu.layout:MAX}") CpuLayout.Mode layoutMode,
+                          PanelRegistry panels) {
+        this(Path.of(CpuService.PROC_STAT), refreshMs, layoutMode, panels.size());
+    }
+
+    ProcStatSource(Path path, long refreshMs, CpuLayout.Mode layoutMode) {
+        this(path, refreshMs, layoutMode, 2);
+    }
+
+    /**
+     * @param panels The number of panels the columns are spread across.
+     */
+    ProcStatSource(Path path, long refreshMs, CpuLayout.Mode layoutMode, int panels) {
+        super("proc-stat", refreshMs, Set.of("cpu"));
+        this.path = path;
+        this.layout = new CpuLayout(layoutMode, panels * CpuLayout.COLUMNS_PER_PANEL);
+        this.load = new CpuLoad(layout);
+    }
+
+    /**
+     * Discovers the core count once, before sampling starts, and fits the layout to it.
+     */
+    @PostConstruct
+    public synchronized void init() {
+        try {
+            int cores = open().coreCount();
+            int columns = layout.configure(cores);
+            log.info("CPU layout {}: {} cores on {} columns", layout.getMode(), cores, columns);
+        } catch (IOException e) {
+            log.warn("Could not discover the core count, the CPU layout will be set up on the first sample", e);
+        }
+    }
+
+    @Override
+    protected synchronized CpuLoad sample() throws IOException {
+        load.update(open());
+        return load;
+    }
+
+    @Override
+    protected synchronized void resume() {
+        load.reset();
+    }
+
+    @Override
+    protected boolean isPriming() {
+        return !load.isPublished();
+    }
+
+    /**
+     * Samples the raw counters with the source's own reader, leaving the load as it is.
+     *
+     * @return what {@code view} makes of the sample, which it must not keep.
+     */
+    synchronized <T> T readCounters(Function<ProcStatReader, T> view) throws IOException {
+        return view.apply(open());
+    }
+
+    private ProcStatReader open() throws IOException {
+        if (reader == null) {
+            reader = new ProcStatReader(path);
+        }
+        reader.sample();
+        return reader;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
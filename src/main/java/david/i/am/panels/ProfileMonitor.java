@@ -1,46 +1,83 @@
 package david.i.am.panels;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Switches the active profile when {@code ~/.ledmatrix-profile} changes.
+ * <p>
+ * The file's directory is watched with a {@link WatchService} (inotify on Linux), so
+ * a change is picked up as it happens and nothing is read while the file is left
+ * alone. Events for the file are debounced: editors and shell redirects write in
+ * several steps, so the file is read once no event has arrived for the debounce
+ * interval. If the directory cannot be watched, or stops being watchable, the file
+ * is polled instead.
+ */
 @Slf4j
 @Service
 public class ProfileMonitor {
 
     private static final String PROFILE_FILE = System.getProperty("user.home") + "/.ledmatrix-profile";
-    private static final Set<String> KNOWN_PROFILES = Set.of("cpu", "ram", "wifibattery", "shimmer", "dasblinkenlights");
+    private static final Set<String> KNOWN_PROFILES = Set.of("cpu", "ram", "wifibattery", "shimmer", "dasblinkenlights", ExternalFrameService.PROFILE, Compositor.PROFILE);
 
     private final ProfileState profileState;
-    private String lastProfile;
+    private final Path path;
+    private final long debounceMs;
+    private final long pollMs;
+    private volatile String lastProfile;
+    private WatchService watchService;
+    private Thread watcher;
+    private ScheduledExecutorService poller;
+
+    @Autowired
+    public ProfileMonitor(ProfileState profileState,
+                          @Value("${panels.profile.debounce-ms:20}") long debounceMs,
+                          @Value("${panels.profile.poll-ms:1000}") long pollMs) {
+        this(profileState, Paths.get(PROFILE_FILE), debounceMs, pollMs);
+    }
 
-    public ProfileMonitor(ProfileState profileState) {
+    ProfileMonitor(ProfileState profileState, Path path, long debounceMs, long pollMs) {
         this.profileState = profileState;
+        this.path = path.toAbsolutePath();
+        this.debounceMs = debounceMs;
+        this.pollMs = pollMs;
     }
 
     @PostConstruct
     public void init() {
-        log.info("Checking for profile file at: {}", PROFILE_FILE);
-        
+        log.info("Checking for profile file at: {}", path);
+
         // Initial sync with the file
-        Path path = Paths.get(PROFILE_FILE);
         String profileFromFile = null;
         if (Files.exists(path)) {
-            log.info("Profile file found at: {}", path.toAbsolutePath());
+            log.info("Profile file found at: {}", path);
             try {
                 String content = Files.readString(path).trim().toLowerCase();
                 log.info("Profile file content: '{}' (length: {})", content, content.length());
                 if (content.isEmpty()) {
                     log.warn("Profile file is empty, ignoring.");
-                    return;
-                }
-                if (KNOWN_PROFILES.contains(content)) {
+                } else if (KNOWN_PROFILES.contains(content)) {
                     profileFromFile = content;
                 } else {
                     log.warn("Profile '{}' from file is not in KNOWN_PROFILES: {}", content, KNOWN_PROFILES);
@@ -49,7 +86,7 @@ public class ProfileMonitor {
                 log.error("Error reading profile file during init", e);
             }
         } else {
-            log.info("Profile file NOT found at: {}", path.toAbsolutePath());
+            log.info("Profile file NOT found at: {}", path);
         }
 
         if (profileFromFile != null) {
@@ -61,13 +98,75 @@ public class ProfileMonitor {
         }
 
         log.info("ProfileMonitor initialized. Current lastProfile: {}", lastProfile);
+        startWatching();
     }
 
-    @Scheduled(fixedRate = 1000)
+    private void startWatching() {
+        try {
+            watchService = path.getFileSystem().newWatchService();
+            path.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Cannot watch {} for changes; polling it every {} ms instead", path.getParent(), pollMs, e);
+            closeWatchService();
+            startPolling();
+            return;
+        }
+        WatchService watch = watchService;
+        watcher = new Thread(() -> watchLoop(watch), "profile-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop(WatchService watch) {
+        try {
+            boolean valid = true;
+            while (valid) {
+                WatchKey key = watch.take();
+                boolean changed = concernsProfileFile(key);
+                valid = key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // Wait for the writer to finish before reading the file
+                while (valid && (key = watch.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    key.pollEvents();
+                    valid = key.reset();
+                }
+                monitorProfileFile();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            return; // shutting down
+        }
+        log.warn("{} can no longer be watched; polling {} every {} ms instead", path.getParent(), path, pollMs);
+        closeWatchService();
+        startPolling();
+    }
+
+    private boolean concernsProfileFile(WatchKey key) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || path.getFileName().equals(event.context())) {
+                concerned = true;
+            }
+        }
+        return concerned;
+    }
+
+    private synchronized void startPolling() {
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "profile-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleAtFixedRate(this::monitorProfileFile, 0, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the profile file and applies the profile in it if it changed.
+     */
     public void monitorProfileFile() {
-        Path path = Paths.get(PROFILE_FILE);
         if (!Files.exists(path)) {
-            log.trace("Profile file does not exist: {}", PROFILE_FILE);
+            log.trace("Profile file does not exist: {}", path);
             return;
         }
 
@@ -75,18 +174,18 @@ public class ProfileMonitor {
             String content = Files.readString(path).trim().toLowerCase();
             if (!content.equals(lastProfile)) {
                 if (KNOWN_PROFILES.contains(content)) {
-                    log.info("Profile change detected in {}: {} -> {}", PROFILE_FILE, lastProfile, content);
+                    log.info("Profile change detected in {}: {} -> {}", path, lastProfile, content);
                     updateProfile(content);
                 } else if (!content.isEmpty()) {
-                    log.warn("Unknown profile detected in {}: {}", PROFILE_FILE, content);
+                    log.warn("Unknown profile detected in {}: {}", path, content);
                 }
             }
         } catch (IOException e) {
-            log.error("Error reading profile file: {}", PROFILE_FILE, e);
+            log.error("Error reading profile file: {}", path, e);
         }
     }
 
-    private void updateProfile(String newProfile) {
+    private synchronized void updateProfile(String newProfile) {
         if (newProfile != null && newProfile.equals(lastProfile)) {
             return;
         }
@@ -94,4 +193,33 @@ public class ProfileMonitor {
         lastProfile = newProfile;
         profileState.setActiveProfile(newProfile);
     }
+
+    /**
+     * @return true while changes are picked up from file system events rather than by polling.
+     */
+    public synchronized boolean isWatching() {
+        return watchService != null;
+    }
+
+    private synchronized void closeWatchService() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Error closing the profile watch service", e);
+        }
+        watchService = null;
+    }
+
+    @PreDestroy
+    public void stop() {
+        closeWatchService();
+        synchronized (this) {
+            if (poller != null) {
+                poller.shutdownNow();
+            }
+        }
+    }
 }
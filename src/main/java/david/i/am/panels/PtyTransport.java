@@ -0,0 +1,97 @@
+package david.i.am.panels;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A pseudo-terminal (or any character device) opened as a plain file, for running
+ * against a device emulator on the other end, e.g. one side of
+ * {@code socat -d -d pty,raw,echo=0 pty,raw,echo=0}. The pty must already be in raw mode.
+ * <p>
+ * The kernel's output queue is not visible through file streams, so
+ * {@link #bytesAwaitingWrite()} always reports 0 and writes are never partial.
+ */
+@Slf4j
+public class PtyTransport implements PanelTransport {
+
+    private final Path device;
+    private final FileInputStream in;
+    private final FileOutputStream out;
+    private volatile boolean open;
+
+    public PtyTransport(Path device) throws IOException {
+        this.device = device;
+        this.in = new FileInputStream(device.toFile());
+        try {
+            this.out = new FileOutputStream(device.toFile());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        this.open = true;
+        log.info("Pseudo-terminal {} opened", device);
+    }
+
+    @Override
+    public String getName() {
+        return device.toString();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int write(byte[] buffer, int offset, int length) {
+        try {
+            out.write(buffer, offset, length);
+            return length;
+        } catch (IOException e) {
+            log.error("Failed to write to {}", device, e);
+            return -1;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        try {
+            // Only read what is there; a read past it would block until the emulator writes more
+            int available = in.available();
+            return available > 0 ? in.read(buffer, offset, Math.min(length, available)) : 0;
+        } catch (IOException e) {
+            log.error("Failed to read from {}", device, e);
+            return -1;
+        }
+    }
+
+    @Override
+    public int bytesAvailable() {
+        try {
+            return in.available();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public int bytesAwaitingWrite() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        // Each side on its own, so a failure closing one does not leave the other open
+        try (out) {
+            in.close();
+        } catch (IOException e) {
+            log.error("Failed to close {}", device, e);
+            return;
+        }
+        log.info("Pseudo-terminal {} closed", device);
+    }
+}
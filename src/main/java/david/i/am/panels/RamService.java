@@ -1,23 +1,32 @@
 package david.i.am.panels;
 
-import java.io.File;
-import java.util.List;
-import java.util.Scanner;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 import lombok.Builder;
 import lombok.Getter;
 import org.springframework.stereotype.Service;
 
 @Service
-public class RamService implements PanelService {
+public class RamService implements CanvasService {
 
   public static final String PROC_MEMINFO = "/proc/meminfo";
 
+  private static final int[] FRAME_DATA = {
+      0b110010101,
+      0b100010001,
+      0b110011011,
+      0b101010101,
+      0b100110001,
+      0b000000000
+  };
+  private static final int BAR_ROWS = 34;
+  private static final BarFrames FRAMES = new BarFrames(FRAME_DATA.length + BAR_ROWS, RamService::drawBar);
+
   private final ProfileState profileState;
 
-  public RamService(ProfileState profileState) {
+  private final MeminfoSource meminfo;
+
+  public RamService(ProfileState profileState, MeminfoSource meminfo) {
     this.profileState = profileState;
+    this.meminfo = meminfo;
   }
 
   @Override
@@ -26,19 +35,11 @@ public class RamService implements PanelService {
   }
 
   @Override
-  public void showLeft(CommunicationCreator left) {
-    if (!isActive(profileState)) {
-      return;
-    }
-    left.sendDraw(ramImage());
-  }
-
-  @Override
-  public void showRight(CommunicationCreator right) {
-    if (!isActive(profileState)) {
+  public void show(CommunicationCreator panel, int index, int count) {
+    if (!isShown(profileState, panel) || !panel.isFrameDue()) {
       return;
     }
-    right.sendDraw(ramImage());
+    panel.sendFrame(ramImage());
   }
 
   @Builder
@@ -51,52 +52,52 @@ public class RamService implements PanelService {
     private Integer cached;      // Cached
     private Integer swapTotal;   // SwapTotal
     private Integer swapFree;    // SwapFree
+
+    /**
+     * @return memory in use (total minus available) as a percentage of total.
+     */
+    public int getUsedPercent() {
+      return total != null && total > 0 && available != null
+          ? (int) ((total - (long) available) * 100 / total) : 0;
+    }
   }
+
+  /**
+   * @return the latest sample from the background sampler, or null before the first one.
+   */
   public Ram ram() {
-    File ueventFile = new File(PROC_MEMINFO);
-    Ram.RamBuilder builder = Ram.builder();
-
-    try (Scanner scanner = new Scanner(ueventFile)) {
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-        if (line.startsWith("MemTotal:")) {
-          builder.total(Integer.parseInt(line.replaceAll("\\D+", ""))); // Extract digits
-        } else if (line.startsWith("MemFree:")) {
-          builder.free(Integer.parseInt(line.replaceAll("\\D+", "")));
-        } else if (line.startsWith("MemAvailable:")) {
-          builder.available(Integer.parseInt(line.replaceAll("\\D+", "")));
-        } else if (line.startsWith("Buffers:")) {
-          builder.buffers(Integer.parseInt(line.replaceAll("\\D+", "")));
-        } else if (line.startsWith("Cached:")) {
-          builder.cached(Integer.parseInt(line.replaceAll("\\D+", "")));
-        } else if (line.startsWith("SwapTotal:")) {
-          builder.swapTotal(Integer.parseInt(line.replaceAll("\\D+", "")));
-        } else if (line.startsWith("SwapFree:")) {
-          builder.swapFree(Integer.parseInt(line.replaceAll("\\D+", "")));
-        }
-      }
-    } catch (Exception e) {
-      throw new ParseError(
-          "Failed to parse meminfo file: " + ueventFile.getAbsolutePath(), e);
+    return meminfo.latest();
+  }
+
+  static Ram toRam(MeminfoReader meminfo) {
+    return Ram.builder()
+        .total((int) meminfo.get(MeminfoReader.MEM_TOTAL))
+        .free((int) meminfo.get(MeminfoReader.MEM_FREE))
+        .available((int) meminfo.get(MeminfoReader.MEM_AVAILABLE))
+        .buffers((int) meminfo.get(MeminfoReader.BUFFERS))
+        .cached((int) meminfo.get(MeminfoReader.CACHED))
+        .swapTotal((int) meminfo.get(MeminfoReader.SWAP_TOTAL))
+        .swapFree((int) meminfo.get(MeminfoReader.SWAP_FREE))
+        .build();
+  }
+
+  PanelFrame ramImage() {
+    Ram ram = meminfo.latest();
+    if (ram == null) {
+      // Not sampled yet (profile just became active): the next tick fills it in
+      return FRAMES.empty();
     }
+    return ramImage(ram.getUsedPercent());
+  }
 
-    return builder.build();
+  PanelFrame ramImage(int usedPercent) {
+    return FRAMES.get(usedPercent);
   }
 
-  public byte[] ramImage() {
-    Ram ram = ram();
-    List<Integer> integers = Stream.concat(Stream.of(
-                0b110010101,
-                0b100010001,
-                0b110011011,
-                0b101010101,
-                0b100110001,
-                0b000000000),
-            IntStream.rangeClosed(0, 33)
-                .map(index -> (100 - ram.getTotal()) / 3 < index ? 0b111_111_111 : 0b000_000_000)
-                .boxed())
-        .toList();
-
-    return BitUtils.packbits(integers);
+  private static void drawBar(int[] rows, int usedPercent) {
+    System.arraycopy(FRAME_DATA, 0, rows, 0, FRAME_DATA.length);
+    for (int index = 0; index < BAR_ROWS; index++) {
+      rows[FRAME_DATA.length + index] = (100 - usedPercent) / 3 < index ? 0b111_111_111 : 0b000_000_000;
+    }
   }
-}
\ No newline at end of file
+}
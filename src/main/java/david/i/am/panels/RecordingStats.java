@@ -0,0 +1,142 @@
+package david.i.am.panels;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame-rate and byte-rate profiles of a {@link FrameRecorder} log, per port.
+ * <p>
+ * A frame is counted at each DRAW, DRAW_GREY_COL_BUFFER or FLUSH_FRAMEBUFFER packet,
+ * the packets that make a panel show something; bytes are counted as on the wire, headers included.
+ * <p>
+ * From the command line: {@code RecordingStats <recording>} prints a summary per
+ * port, then a {@code second,port,frames,bytes} CSV profile.
+ */
+public class RecordingStats {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, Port> ports = new LinkedHashMap<>();
+
+    /**
+     * Totals and a per-second profile for one port.
+     */
+    public static class Port {
+        private long packets;
+        private long bytes;
+        private long frames;
+        private long firstNanos = -1;
+        private long lastNanos;
+        private long[] framesPerSecond = new long[16];
+        private long[] bytesPerSecond = new long[16];
+        private int seconds;
+
+        void add(long nanos, int command, int length) {
+            if (firstNanos < 0) {
+                firstNanos = nanos;
+            }
+            lastNanos = nanos;
+            int second = (int) (nanos / SECOND);
+            if (second >= framesPerSecond.length) {
+                int size = Math.max(second + 1, framesPerSecond.length * 2);
+                framesPerSecond = Arrays.copyOf(framesPerSecond, size);
+                bytesPerSecond = Arrays.copyOf(bytesPerSecond, size);
+            }
+            seconds = Math.max(seconds, second + 1);
+            packets++;
+            bytes += length;
+            bytesPerSecond[second] += length;
+            if (command == CommunicationCreator.CommandVals.DRAW.getValue()
+                || command == CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER.getValue()
+                || command == CommunicationCreator.CommandVals.FLUSH_FRAMEBUFFER.getValue()) {
+                frames++;
+                framesPerSecond[second]++;
+            }
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * @return time from the first packet to the last.
+         */
+        public long getDurationNanos() {
+            return firstNanos < 0 ? 0 : lastNanos - firstNanos;
+        }
+
+        public double getFramesPerSecond() {
+            long duration = getDurationNanos();
+            return duration > 0 ? frames * 1e9 / duration : 0;
+        }
+
+        public double getBytesPerSecond() {
+            long duration = getDurationNanos();
+            return duration > 0 ? bytes * 1e9 / duration : 0;
+        }
+
+        /**
+         * @return frames in each whole second of the recording, counted from its start.
+         */
+        public long[] getFramesPerSecondProfile() {
+            return Arrays.copyOf(framesPerSecond, seconds);
+        }
+
+        /**
+         * @return bytes in each whole second of the recording, counted from its start.
+         */
+        public long[] getBytesPerSecondProfile() {
+            return Arrays.copyOf(bytesPerSecond, seconds);
+        }
+    }
+
+    public static RecordingStats of(Path recording) throws IOException {
+        RecordingStats stats = new RecordingStats();
+        FrameRecorder.read(recording, (nanos, port, command, payload) ->
+            stats.ports.computeIfAbsent(port, p -> new Port())
+                .add(nanos, command, PanelFrame.HEADER_LENGTH + payload.length));
+        return stats;
+    }
+
+    /**
+     * @return the ports in the order they first appear in the recording.
+     */
+    public Map<String, Port> getPorts() {
+        return Collections.unmodifiableMap(ports);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: RecordingStats <recording>");
+            System.exit(2);
+        }
+        RecordingStats stats = of(Path.of(args[0]));
+        for (Map.Entry<String, Port> entry : stats.getPorts().entrySet()) {
+            Port port = entry.getValue();
+            System.out.printf("%s: %d packets, %d frames, %d bytes in %.1f s: %.1f fps, %.0f B/s%n",
+                entry.getKey(), port.getPackets(), port.getFrames(), port.getBytes(),
+                port.getDurationNanos() / 1e9, port.getFramesPerSecond(), port.getBytesPerSecond());
+        }
+        System.out.println("second,port,frames,bytes");
+        for (Map.Entry<String, Port> entry : stats.getPorts().entrySet()) {
+            long[] frames = entry.getValue().getFramesPerSecondProfile();
+            long[] bytes = entry.getValue().getBytesPerSecondProfile();
+            for (int second = 0; second < frames.length; second++) {
+                System.out.printf("%d,%s,%d,%d%n", second, entry.getKey(), frames[second], bytes[second]);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package david.i.am.panels;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Draws the active profile on the panels, frame after frame, through the {@link PanelDispatcher}.
+ * <p>
+ * The loop sleeps until the first panel's governor grants another frame, then has the
+ * dispatcher render and present it on every panel. Frames are never dispatched more
+ * often than {@code panels.serial.max-fps}, so a profile that declines to draw does not
+ * make the loop spin. While no profile is active the loop only checks back every
+ * {@value #IDLE_POLL_MS} ms.
+ */
+@Slf4j
+@Service
+public class RenderLoop {
+
+    static final long IDLE_POLL_MS = 250;
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private final PanelDispatcher dispatcher;
+    private final PanelRegistry panels;
+    private final List<PanelService> services;
+    private final ProfileState profileState;
+    private final long minFrameNanos;
+    private volatile boolean running;
+    private Thread loop;
+
+    public RenderLoop(PanelDispatcher dispatcher, PanelRegistry panels, List<PanelService> services,
+                      ProfileState profileState,
+                      @Value("${panels.serial.max-fps:" + CommunicationCreator.DEFAULT_MAX_FPS + "}") double maxFps) {
+        this.dispatcher = dispatcher;
+        this.panels = panels;
+        this.services = services;
+        this.profileState = profileState;
+        this.minFrameNanos = (long) (1e9 / Math.max(FrameGovernor.MIN_FPS, maxFps));
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (loop != null) {
+            return;
+        }
+        running = true;
+        loop = new Thread(this::run, "panel-render-loop");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                PanelService service = activeService();
+                if (service == null) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MS));
+                    continue;
+                }
+                long wait = nanosUntilFrameDue();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                long start = System.nanoTime();
+                dispatcher.dispatch(service);
+                long rest = minFrameNanos - (System.nanoTime() - start);
+                if (rest > 0) {
+                    LockSupport.parkNanos(rest);
+                }
+            } catch (Exception e) {
+                log.error("Error in the render loop", e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MS));
+            }
+        }
+    }
+
+    /**
+     * @return the profile to draw now, or null if none is active.
+     */
+    PanelService activeService() {
+        for (PanelService service : services) {
+            if (service.isActive(profileState)) {
+                return service;
+            }
+        }
+        return null;
+    }
+
+    private long nanosUntilFrameDue() {
+        long wait = Long.MAX_VALUE;
+        for (CommunicationCreator panel : panels.getPanels()) {
+            wait = Math.min(wait, panel.getNanosUntilFrameDue());
+        }
+        return wait;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (loop == null) {
+            return;
+        }
+        LockSupport.unpark(loop);
+        try {
+            loop.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        loop = null;
+    }
+}
@@ -0,0 +1,305 @@
+package david.i.am.panels;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads one panel's replies on a thread of its own and hands each to whoever asked for it.
+ * <p>
+ * The firmware answers queries with fixed 32-byte responses, in the order the queries
+ * arrive, and a response does not say which command it answers. Every query is
+ * therefore registered here, in the order it is written, with a deadline; the reader
+ * drains the port into a ring buffer and completes the oldest outstanding query with
+ * each full response. A query still unanswered at its deadline fails with a
+ * {@link TimeoutException} and any partial response is discarded. A reply may still
+ * come after its query gave up, and would then be taken for the answer to the next
+ * one, so after a timeout whatever arrives for {@value #LATE_REPLY_GRACE_MS} ms is
+ * thrown away, and the next query is only registered, and so written, once that is
+ * over. A response nobody was waiting for is only counted.
+ * <p>
+ * The reader sleeps until the port reports that bytes arrived (see
+ * {@link PanelTransport#setDataListener}) or the oldest query's deadline, and at most
+ * {@value #IDLE_WAIT_MS} ms. Reads do not block, so a port that cannot report
+ * arrivals is polled instead: every millisecond while a reply is outstanding, every
+ * {@value #IDLE_POLL_MS} ms otherwise. The reader never takes the
+ * lock writes are made under; writes never wait on reads, and queries only after a timeout.
+ */
+@Slf4j
+class ResponseReader {
+
+    static final int RESPONSE_LENGTH = 32;
+    static final long IDLE_WAIT_MS = 1000;
+    static final long IDLE_POLL_MS = 100;
+    static final long LATE_REPLY_GRACE_MS = 200;
+    private static final long ACTIVE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    private static final int RING_SIZE = 8 * RESPONSE_LENGTH;
+
+    private final String portName;
+    private final Supplier<PanelTransport> link;
+    private final ConcurrentLinkedQueue<Expected> expected = new ConcurrentLinkedQueue<>();
+    private final Semaphore wakeup = new Semaphore(0);
+    private final Thread reader;
+    private volatile boolean running = true;
+
+    private final byte[] ring = new byte[RING_SIZE]; // reader thread only
+    private final byte[] chunk = new byte[RING_SIZE]; // reader thread only
+    private int ringStart; // reader thread only
+    private int ringLength; // reader thread only
+    private long discardUntilNanos; // reader thread only; 0 unless replies are being thrown away
+    private PanelTransport watched; // reader thread only: the port last seen
+    private boolean notified; // reader thread only: whether that port wakes the reader on arrivals
+    private boolean discarding; // guarded by this; true while late replies are thrown away
+
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong unsolicited = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * A query that has been, or is about to be, written, and where its reply goes.
+     */
+    static final class Expected {
+        final CommunicationCreator.CommandVals command;
+        final CompletableFuture<byte[]> reply;
+        final long deadlineNanos;
+
+        Expected(CommunicationCreator.CommandVals command, CompletableFuture<byte[]> reply, long deadlineNanos) {
+            this.command = command;
+            this.reply = reply;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * Starts the reader thread.
+     *
+     * @param link The port as it is now; null while it is not open.
+     */
+    ResponseReader(String portName, Supplier<PanelTransport> link) {
+        this.portName = portName;
+        this.link = link;
+        reader = new Thread(this::readLoop, "panel-reader-" + portName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Registers a query before it is written. Queries must be registered in the order
+     * they go out, so only the thread writing them calls this. Right after a timeout
+     * this waits for late replies to be thrown away first.
+     *
+     * @return the registration, to {@link #cancel} if the write fails.
+     */
+    Expected expect(CommunicationCreator.CommandVals command, CompletableFuture<byte[]> reply, long timeoutMs) {
+        awaitLateReplies();
+        Expected query = new Expected(command, reply, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        expected.add(query);
+        wakeup.release();
+        return query;
+    }
+
+    private synchronized void awaitLateReplies() {
+        long deadline = System.nanoTime() + 2 * TimeUnit.MILLISECONDS.toNanos(LATE_REPLY_GRACE_MS);
+        long remaining;
+        while (discarding && running && (remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Withdraws a query that could not be written, failing its reply with {@code cause}.
+     */
+    void cancel(Expected query, Throwable cause) {
+        expected.remove(query);
+        query.reply.completeExceptionally(cause);
+    }
+
+    private void readLoop() {
+        while (running) {
+            try {
+                wakeup.tryAcquire(waitNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            wakeup.drainPermits();
+            try {
+                drain();
+                dispatch();
+                long now = System.nanoTime();
+                expire(now);
+                endDiscarding(now);
+            } catch (Exception e) {
+                log.error("Error reading from {}", portName, e);
+            }
+        }
+        IllegalStateException closed = new IllegalStateException(portName + " is closed");
+        Expected query;
+        while ((query = expected.poll()) != null) {
+            query.reply.completeExceptionally(closed);
+        }
+    }
+
+    /**
+     * @return how long to sleep unless woken: until the next deadline, or the next poll of a port that has to be polled.
+     */
+    private long waitNanos() {
+        PanelTransport port = link.get();
+        if (port != watched) {
+            watched = port;
+            notified = port != null && port.setDataListener(wakeup::release);
+            return 0; // for what arrived before the listener was set
+        }
+        boolean busy = !expected.isEmpty() || discardUntilNanos != 0;
+        long wait;
+        if (port == null || notified) {
+            wait = TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS);
+        } else {
+            wait = busy ? ACTIVE_POLL_NANOS : TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MS);
+        }
+        long now = System.nanoTime();
+        Expected oldest = expected.peek();
+        if (oldest != null) {
+            wait = Math.min(wait, oldest.deadlineNanos - now);
+        }
+        if (discardUntilNanos != 0) {
+            wait = Math.min(wait, discardUntilNanos - now);
+        }
+        return Math.max(0, wait);
+    }
+
+    private void drain() {
+        PanelTransport port = link.get();
+        if (port == null) {
+            ringLength = 0; // a reply cut off by an unplug is not coming back
+            return;
+        }
+        int read;
+        while (ringLength < RING_SIZE && (read = port.read(chunk, 0, RING_SIZE - ringLength)) > 0) {
+            int end = (ringStart + ringLength) % RING_SIZE;
+            int first = Math.min(read, RING_SIZE - end);
+            System.arraycopy(chunk, 0, ring, end, first);
+            System.arraycopy(chunk, first, ring, 0, read - first);
+            ringLength += read;
+            dispatch(); // make room before reading on
+        }
+    }
+
+    private void dispatch() {
+        if (discardUntilNanos != 0) {
+            if (ringLength > 0) {
+                discarded.addAndGet(ringLength);
+                log.debug("Discarding {} bytes from {} after a timeout", ringLength, portName);
+                ringStart = 0;
+                ringLength = 0;
+            }
+            return;
+        }
+        while (ringLength >= RESPONSE_LENGTH) {
+            byte[] response = new byte[RESPONSE_LENGTH];
+            int first = Math.min(RESPONSE_LENGTH, RING_SIZE - ringStart);
+            System.arraycopy(ring, ringStart, response, 0, first);
+            System.arraycopy(ring, 0, response, first, RESPONSE_LENGTH - first);
+            ringStart = (ringStart + RESPONSE_LENGTH) % RING_SIZE;
+            ringLength -= RESPONSE_LENGTH;
+
+            Expected query = expected.poll();
+            if (query == null) {
+                unsolicited.incrementAndGet();
+                log.debug("Response from {} that nothing asked for", portName);
+            } else {
+                answered.incrementAndGet();
+                query.reply.complete(response); // a no-op if the caller gave up already
+            }
+        }
+    }
+
+    private void expire(long now) {
+        Expected query;
+        while ((query = expected.peek()) != null && now - query.deadlineNanos > 0) {
+            expected.remove(query);
+            timedOut.incrementAndGet();
+            if (ringLength > 0) {
+                log.debug("Dropping {} bytes of an incomplete response from {}", ringLength, portName);
+                ringStart = 0;
+                ringLength = 0;
+            }
+            discardUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(LATE_REPLY_GRACE_MS);
+            synchronized (this) {
+                discarding = true; // before anyone hears of the timeout and queries again
+            }
+            query.reply.completeExceptionally(new TimeoutException("No reply to " + query.command + " from " + portName));
+        }
+    }
+
+    /**
+     * Lets queries through again once the grace period for late replies is over.
+     */
+    private void endDiscarding(long now) {
+        if (discardUntilNanos == 0 || now - discardUntilNanos < 0) {
+            return;
+        }
+        drain(); // the last of what came in time to be late
+        discardUntilNanos = 0;
+        synchronized (this) {
+            discarding = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return responses that answered a query.
+     */
+    long getAnswered() {
+        return answered.get();
+    }
+
+    /**
+     * @return responses that arrived with no query outstanding.
+     */
+    long getUnsolicited() {
+        return unsolicited.get();
+    }
+
+    /**
+     * @return queries that got no reply in time.
+     */
+    long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return bytes thrown away as late replies to queries that had timed out.
+     */
+    long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Stops the reader; outstanding queries fail.
+     */
+    void close() {
+        running = false;
+        wakeup.release();
+        synchronized (this) {
+            notifyAll(); // a query waiting out late replies
+        }
+        try {
+            reader.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
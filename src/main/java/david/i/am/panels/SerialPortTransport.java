@@ -0,0 +1,91 @@
+package david.i.am.panels;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A USB serial port, through jSerialComm.
+ */
+@Slf4j
+public class SerialPortTransport implements PanelTransport {
+
+    private final SerialPort serialPort;
+    private final String name;
+
+    /**
+     * Opens and configures the port.
+     *
+     * @throws IllegalStateException if the port cannot be opened.
+     */
+    public SerialPortTransport(String portName, int baudRate, long writeTimeoutMs) {
+        this.name = portName;
+        serialPort = SerialPort.getCommPort(portName);
+        serialPort.setComPortParameters(baudRate, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
+        // Writes block on the writer thread until the bytes are handed to the driver; reads stay non-blocking.
+        // Stale frames are dropped by the mailbox, so blocking writes cannot build up a backlog.
+        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_BLOCKING, 0, (int) writeTimeoutMs);
+
+        if (!serialPort.openPort()) {
+            throw new IllegalStateException("Failed to open port: " + portName);
+        }
+        log.info("Serial Port {} opened at baud rate {}", portName, baudRate);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort.isOpen();
+    }
+
+    @Override
+    public int write(byte[] buffer, int offset, int length) {
+        return serialPort.writeBytes(buffer, length, offset);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        return serialPort.readBytes(buffer, length, offset);
+    }
+
+    @Override
+    public boolean setDataListener(Runnable listener) {
+        // jSerialComm waits for the data on an event thread of its own
+        return serialPort.addDataListener(new SerialPortDataListener() {
+            @Override
+            public int getListeningEvents() {
+                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+            }
+
+            @Override
+            public void serialEvent(SerialPortEvent event) {
+                listener.run();
+            }
+        });
+    }
+
+    @Override
+    public int bytesAvailable() {
+        return serialPort.bytesAvailable();
+    }
+
+    @Override
+    public int bytesAwaitingWrite() {
+        return Math.max(0, serialPort.bytesAwaitingWrite());
+    }
+
+    @Override
+    public void close() {
+        serialPort.removeDataListener();
+        if (serialPort.closePort()) {
+            log.info("Serial port closed successfully.");
+        } else {
+            log.error("Failed to close the serial port.");
+        }
+    }
+}
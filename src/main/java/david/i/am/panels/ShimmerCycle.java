@@ -0,0 +1,78 @@
+package david.i.am.panels;
+
+import java.util.List;
+
+/**
+ * The whole shimmer animation, compiled into ready-to-send frames.
+ * <p>
+ * The animation repeats every {@code gradient.size()} positions and each panel
+ * runs it in a fixed orientation, so every frame either panel can show is built
+ * up front: nine STAGE_GREY_COL packets (column index plus one brightness byte
+ * per row, headers included) followed by DRAW_GREY_COL_BUFFER. Drawing a frame
+ * is then a lookup by position.
+ * <p>
+ * A cycle is immutable once built; a new gradient means a new cycle.
+ */
+final class ShimmerCycle {
+
+    private final List<Integer> gradient;
+    private final PanelFrame[] leftFrames;
+    private final PanelFrame[] rightFrames;
+
+    /**
+     * @param gradient Brightness per step of the pattern; its size is the period of the animation.
+     * @param width    Columns per panel.
+     * @param height   Rows per column.
+     */
+    ShimmerCycle(List<Integer> gradient, int width, int height) {
+        if (gradient.isEmpty()) {
+            throw new IllegalArgumentException("Shimmer gradient must not be empty");
+        }
+        this.gradient = List.copyOf(gradient);
+        int[] levels = gradient.stream().mapToInt(Integer::intValue).toArray();
+        int period = levels.length;
+        this.leftFrames = new PanelFrame[period];
+        this.rightFrames = new PanelFrame[period];
+        for (int position = 0; position < period; position++) {
+            // The left panel runs the pattern mirrored so the two halves meet in the middle
+            leftFrames[position] = compile(levels, position, width, height, true, true);
+            rightFrames[position] = compile(levels, position, width, height, false, false);
+        }
+    }
+
+    private static PanelFrame compile(int[] levels, int startPosition, int width, int height,
+                                      boolean invertAngle, boolean reverseDirection) {
+        PanelFrame frame = new PanelFrame(
+            (PanelFrame.HEADER_LENGTH + height + 1) * width + PanelFrame.HEADER_LENGTH, width + 1);
+        for (int col = 0; col < width; col++) {
+            int start = frame.reserve(CommunicationCreator.CommandVals.STAGE_GREY_COL, height + 1);
+            byte[] data = frame.array();
+            data[start] = (byte) col; // The first byte is the column index
+            for (int row = 0; row < height; row++) {
+                int spatialOffset = col + (invertAngle ? -row : row);
+                int patternIdx = Math.floorMod(
+                    startPosition + (reverseDirection ? -spatialOffset : spatialOffset), levels.length);
+                data[start + row + 1] = (byte) levels[patternIdx];
+            }
+        }
+        frame.reserve(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, 0);
+        return frame;
+    }
+
+    List<Integer> gradient() {
+        return gradient;
+    }
+
+    int period() {
+        return leftFrames.length;
+    }
+
+    /**
+     * @param position Any position; wrapped onto the period.
+     * @return the frame for that position on the given panel. Callers must not modify it.
+     */
+    PanelFrame frame(int position, boolean leftPanel) {
+        int index = Math.floorMod(position, leftFrames.length);
+        return leftPanel ? leftFrames[index] : rightFrames[index];
+    }
+}
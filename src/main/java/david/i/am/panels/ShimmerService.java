@@ -2,51 +2,76 @@ package david.i.am.panels;
 
 import jakarta.annotation.PostConstruct;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 @Data
-public class ShimmerService implements PanelService {
+public class ShimmerService implements CanvasService {
   private static final int FRAME_RATE = 5; // frames per second
   private static final long FRAME_TIME_MS = 1000 / FRAME_RATE;
-  private static final int INTER_COLUMN_DELAY_MS = 2;
   private static final int MATRIX_WIDTH = 9;
   private static final int MATRIX_HEIGHT = 34;
 
   private final ProfileState profileState;
+  // One position for all panels, moved on once per frame, so they never drift out of phase
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
   private final AtomicInteger position = new AtomicInteger(0);
-  private final List<Integer> gradientPattern;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private volatile ShimmerCycle cycle;
   private final AtomicInteger frameCount = new AtomicInteger(0);
   private final long startTime = System.currentTimeMillis();
 
 
-  public ShimmerService(ProfileState profileState) {
+  public ShimmerService(ProfileState profileState,
+                        @Value("${panels.shimmer.period:20}") int period,
+                        @Value("${panels.shimmer.max-level:31}") int maxLevel) {
     this.profileState = profileState;
-    // Initialize gradient pattern: sin function, 20 dots per 360 degrees
+    setGradientPattern(sineGradient(period, maxLevel));
+  }
+
+  /**
+   * A sine wave from 0 to {@code maxLevel} and back, {@code period} dots per 360 degrees.
+   */
+  static List<Integer> sineGradient(int period, int maxLevel) {
     List<Integer> pattern = new ArrayList<>();
-    int dotsPerCycle = 20;
-    int maxVal = 31;
-    for (int i = 0; i < dotsPerCycle; i++) {
+    for (int i = 0; i < period; i++) {
       // sin(x) goes from -1 to 1. 
       // We want to map it to 0 to maxVal.
       // (sin(x) + 1) / 2 goes from 0 to 1.
-      double angle = 2 * Math.PI * i / dotsPerCycle;
+      double angle = 2 * Math.PI * i / period;
       double sinVal = Math.sin(angle);
-      int val = (int) Math.round(((sinVal + 1) / 2.0) * maxVal);
+      int val = (int) Math.round(((sinVal + 1) / 2.0) * maxLevel);
       pattern.add(val);
     }
-    this.gradientPattern = Collections.unmodifiableList(pattern);
+    return pattern;
+  }
+
+  public List<Integer> getGradientPattern() {
+    return cycle.gradient();
+  }
+
+  /**
+   * Replaces the gradient and recompiles the animation for it. Panels pick up
+   * the new cycle on their next frame.
+   */
+  public void setGradientPattern(List<Integer> gradientPattern) {
+    cycle = new ShimmerCycle(gradientPattern, MATRIX_WIDTH, MATRIX_HEIGHT);
   }
 
   @PostConstruct
   public void init() {
-    log.info("ShimmerService initialized");
+    log.info("ShimmerService initialized with a {}-step cycle", cycle.period());
   }
 
   @Override
@@ -60,61 +85,30 @@ public class ShimmerService implements PanelService {
   }
 
   @Override
-  public void showLeft(CommunicationCreator left) {
-    if (!isActive(profileState)) {
-      return;
+  public void nextFrame() {
+    position.incrementAndGet();
+    int frames = frameCount.incrementAndGet();
+    if (frames % 10 == 0) {  // Log FPS every 10 frames
+      long currentTime = System.currentTimeMillis();
+      float fps = 1000.0f * frames / (currentTime - startTime);
+      log.info("Current FPS: {}", String.format("%.2f", fps));
     }
-    int pos = position.get() % gradientPattern.size();
-    updateDisplay(left, pos, true, true);
   }
 
   @Override
-  public void showRight(CommunicationCreator right) {
-    if (!isActive(profileState)) {
+  public void show(CommunicationCreator panel, int index, int count) {
+    if (!isShown(profileState, panel) || !panel.isFrameDue()) {
       return;
     }
-    int pos = position.getAndIncrement() % gradientPattern.size();
-    updateDisplay(right, pos, false, false);
-    
-    int count = frameCount.incrementAndGet();
-    if (count % 10 == 0) {  // Log FPS every 10 frames
-      long currentTime = System.currentTimeMillis();
-      float fps = 1000.0f * count / (currentTime - startTime);
-      log.info("Current FPS: {}", String.format("%.2f", fps));
-    }
+    // The left half of the panels runs the pattern mirrored so the two halves meet in the middle
+    panel.sendFrame(shimmerImage(position.get(), index < count / 2));
   }
 
-  private void updateDisplay(CommunicationCreator device, int startPosition, boolean invertAngle, boolean reverseDirection) {
-    try {
-      // Pre-prepare all column data
-      byte[][] columnData = new byte[MATRIX_WIDTH][];
-      int patternSize = gradientPattern.size();
-
-      for (int col = 0; col < MATRIX_WIDTH; col++) {
-        columnData[col] = new byte[MATRIX_HEIGHT + 1];
-        columnData[col][0] = (byte) col; // The first byte is the column index
-
-        for (int row = 0; row < MATRIX_HEIGHT; row++) {
-          int spatialOffset = col + (invertAngle ? -row : row);
-          int patternIdx = Math.floorMod(startPosition + (reverseDirection ? -spatialOffset : spatialOffset), patternSize);
-          columnData[col][row + 1] = gradientPattern.get(patternIdx).byteValue();
-        }
-      }
-
-      // Send columns with verification
-      for (int col = 0; col < MATRIX_WIDTH; col++) {
-        device.sendCommand(CommunicationCreator.CommandVals.STAGE_GREY_COL, columnData[col]);
-
-        Thread.sleep(INTER_COLUMN_DELAY_MS);
-      }
-
-      // Draw buffer with verification
-      device.sendCommand(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, new byte[0]);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    } catch (Exception e) {
-      log.error("Error updating display", e);
-    }
+  /**
+   * @return the precompiled frame for {@code startPosition}; nine staged grey columns and a draw.
+   */
+  PanelFrame shimmerImage(int startPosition, boolean leftPanel) {
+    return cycle.frame(startPosition, leftPanel);
   }
 
-}
\ No newline at end of file
+}
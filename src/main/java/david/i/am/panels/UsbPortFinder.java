@@ -0,0 +1,150 @@
+package david.i.am.panels;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the serial device of an LED matrix module by USB vendor and product id,
+ * through jSerialComm's port enumeration.
+ * <p>
+ * A module is picked by its USB serial number when one is configured, which keeps
+ * left and right apart however the kernel numbers the ttyACM devices. Without one,
+ * modules are taken by position in the order of the USB ports they sit in, once all
+ * the expected modules are present; until then an unpinned position gets nothing.
+ * Whatever a position got is claimed for it: it is given that module again after a
+ * replug, and no other position is ever given it. When no port matches the ids at all
+ * (other hardware, or an OS that does not report them), the configured device path
+ * is used as it is.
+ * <p>
+ * One finder serves all the panels, so that claims are seen by all of them.
+ */
+@Slf4j
+public class UsbPortFinder {
+
+    public static final int FRAMEWORK_VENDOR_ID = 0x32AC;
+    public static final int LED_MATRIX_PRODUCT_ID = 0x0020;
+
+    private final int vendorId;
+    private final int productId;
+    private final int expectedModules;
+    private final Map<Integer, String> claims = new HashMap<>(); // position -> module key; guarded by this
+
+    /**
+     * @param expectedModules How many modules the panels use, all of which must be
+     *                        present before unpinned positions are handed out.
+     */
+    public UsbPortFinder(int vendorId, int productId, int expectedModules) {
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.expectedModules = expectedModules;
+    }
+
+    /**
+     * A serial port as enumerated, with the USB ids it reports.
+     */
+    static final class Module {
+        final String path;
+        final int vendorId;
+        final int productId;
+        final String serialNumber;
+        final String location; // the physical USB port, e.g. 1-4.2
+
+        Module(String path, int vendorId, int productId, String serialNumber, String location) {
+            this.path = path;
+            this.vendorId = vendorId;
+            this.productId = productId;
+            this.serialNumber = serialNumber != null ? serialNumber : "";
+            this.location = location != null ? location : "";
+        }
+
+        /**
+         * @return what tells this module apart across replugs: its serial number, or its device path without one.
+         */
+        String key() {
+            return serialNumber.isEmpty() ? path : serialNumber;
+        }
+
+        @Override
+        public String toString() {
+            return path + " (" + String.format("%04x:%04x", vendorId, productId) + " serial " + serialNumber
+                + " at " + location + ")";
+        }
+    }
+
+    /**
+     * Claims the module with this serial number for {@code position} ahead of any lookup,
+     * so that no unpinned position takes it first; an empty serial number pins nothing.
+     */
+    public synchronized void pin(int position, String serialNumber) {
+        if (serialNumber != null && !serialNumber.isEmpty()) {
+            claims.put(position, serialNumber);
+        }
+    }
+
+    /**
+     * Enumerates the ports and picks the module's device.
+     *
+     * @param serialNumber The module's USB serial number; empty to pick by {@code position}.
+     * @param position     The panel's index, and so its module's among the matching modules in port order.
+     * @param fallback     Device path to use when no port matches the USB ids.
+     * @return the device path, e.g. /dev/ttyACM0.
+     * @throws IllegalStateException if matching modules are present but not this one.
+     */
+    public String find(String serialNumber, int position, String fallback) {
+        List<Module> ports = Arrays.stream(SerialPort.getCommPorts())
+            .map(port -> new Module(port.getSystemPortPath(), port.getVendorID(), port.getProductID(),
+                port.getSerialNumber(), port.getPortLocation()))
+            .toList();
+        String path = select(ports, serialNumber, position, fallback);
+        log.debug("Port for module {} #{}: {} among {}", serialNumber, position, path, ports);
+        return path;
+    }
+
+    synchronized String select(List<Module> ports, String serialNumber, int position, String fallback) {
+        List<Module> modules = ports.stream()
+            .filter(port -> port.vendorId == vendorId && port.productId == productId)
+            .sorted(Comparator.comparing((Module port) -> port.location).thenComparing(port -> port.serialNumber))
+            .toList();
+        if (modules.isEmpty()) {
+            return fallback;
+        }
+        if (serialNumber != null && !serialNumber.isEmpty()) {
+            Module module = modules.stream()
+                .filter(candidate -> candidate.serialNumber.equals(serialNumber))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                    "No module with serial number " + serialNumber + " among " + modules));
+            claims.put(position, module.key());
+            return module.path;
+        }
+        String claimed = claims.get(position);
+        if (claimed != null) {
+            return modules.stream()
+                .filter(module -> module.key().equals(claimed))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                    "Module " + claimed + " of #" + position + " is not among " + modules))
+                .path;
+        }
+        if (modules.size() < expectedModules) {
+            throw new IllegalStateException("Only " + modules.size() + " of " + expectedModules
+                + " modules present, cannot tell which is #" + position + ": " + modules);
+        }
+        Module module = position < modules.size() ? modules.get(position) : null;
+        if (module == null || claims.containsValue(module.key())) {
+            // taken by a panel pinned to it: this one gets a module nobody has
+            module = modules.stream()
+                .filter(candidate -> !claims.containsValue(candidate.key()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                    "No unclaimed module for #" + position + " among " + modules));
+        }
+        claims.put(position, module.key());
+        return module.path;
+    }
+}
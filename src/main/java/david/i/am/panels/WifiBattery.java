@@ -2,12 +2,9 @@ package david.i.am.panels;
 
 import java.io.File;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.function.BiConsumer;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 import lombok.Builder;
 import lombok.Getter;
 import org.springframework.stereotype.Service;
@@ -17,10 +14,37 @@ public class WifiBattery implements PanelService {
   public static final String POWER_SUPPLY_BAT_1_UEVENT = "/sys/class/power_supply/BAT1/uevent";
   public static final String PROC_NET_WIRELESS = "/proc/net/wireless";
 
+  private static final int[] BATTERY_FRAME_DATA = {
+      0b011111111,
+      0b110100001,
+      0b110100001,
+      0b011111111,
+      0b000000000,
+      0b111111111
+  };
+  private static final int[] WIRELESS_FRAME_DATA = {
+      0b001010100,
+      0b000101010,
+      0b110010101,
+      0b110010101,
+      0b000101010,
+      0b001010100,
+      0b000000000
+  };
+  private static final int BAR_ROWS = 34;
+  private static final BarFrames BATTERY_FRAMES =
+      new BarFrames(BATTERY_FRAME_DATA.length + BAR_ROWS, WifiBattery::drawBatteryBar);
+
   private final ProfileState profileState;
+  private final DrawBuffer leftImage = new DrawBuffer(WIRELESS_FRAME_DATA.length + BAR_ROWS);
+
+  private final WirelessSource wirelessSource;
+  private final BatterySource batterySource;
 
-  public WifiBattery(ProfileState profileState) {
+  public WifiBattery(ProfileState profileState, WirelessSource wirelessSource, BatterySource batterySource) {
     this.profileState = profileState;
+    this.wirelessSource = wirelessSource;
+    this.batterySource = batterySource;
   }
 
   private static final Map<String, BiConsumer<Battery.BatteryBuilder, String>> BATTERY_MAPPINGS = new HashMap<>();
@@ -51,34 +75,34 @@ public class WifiBattery implements PanelService {
 
   @Override
   public void showLeft(CommunicationCreator left) {
-    if (!isActive(profileState)) {
+    if (!isActive(profileState) || !left.isFrameDue()) {
       return;
     }
-    left.sendDraw(wirelessImage());
+    left.sendFrame(wirelessImage(leftImage));
   }
 
   @Override
   public void showRight(CommunicationCreator right) {
-    if (!isActive(profileState)) {
+    if (!isActive(profileState) || !right.isFrameDue()) {
       return;
     }
-    right.sendDraw(batteryImage());
+    right.sendFrame(batteryImage());
   }
   
-  byte[] batteryImage() {
-    Battery battery = battery();
-    List<Integer> integers = Stream.concat(Stream.of(
-        0b011111111,
-        0b110100001,
-        0b110100001,
-        0b011111111,
-        0b000000000,
-        0b111111111),
-        IntStream.rangeClosed(0, 33)
-            .map(index -> (100 - battery.getCapacity()) / 3 < index ? 0b111_111_111 : 0b000_000_000 ).boxed())
-        .toList();
-
-    return BitUtils.packbits(integers);
+  PanelFrame batteryImage() {
+    Battery battery = batterySource.latest();
+    return battery == null ? BATTERY_FRAMES.empty() : batteryImage(battery);
+  }
+
+  PanelFrame batteryImage(Battery battery) {
+    return BATTERY_FRAMES.get(battery.getCapacity());
+  }
+
+  private static void drawBatteryBar(int[] rows, int capacity) {
+    System.arraycopy(BATTERY_FRAME_DATA, 0, rows, 0, BATTERY_FRAME_DATA.length);
+    for (int index = 0; index < BAR_ROWS; index++) {
+      rows[BATTERY_FRAME_DATA.length + index] = (100 - capacity) / 3 < index ? 0b111_111_111 : 0b000_000_000;
+    }
   }
 
   @Builder
@@ -112,8 +136,14 @@ public class WifiBattery implements PanelService {
     private String serialNumber;
   }
 
+  /**
+   * @return the latest sample from the background sampler, or null before the first one.
+   */
   public Battery battery() {
-    File ueventFile = new File(POWER_SUPPLY_BAT_1_UEVENT);
+    return batterySource.latest();
+  }
+
+  static Battery battery(File ueventFile) {
     Battery.BatteryBuilder builder = Battery.builder();
 
     try (Scanner scanner = new Scanner(ueventFile)) {
@@ -141,8 +171,14 @@ public class WifiBattery implements PanelService {
     return builder.build();
   }
 
+  /**
+   * @return the latest sample from the background sampler, or null if there is none.
+   */
   public Wifi wireless() {
-    File wirelessFile = new File(PROC_NET_WIRELESS);
+    return wirelessSource.latest();
+  }
+
+  static Wifi wireless(File wirelessFile) {
     try (Scanner scanner = new Scanner(wirelessFile)) {
       while (scanner.hasNextLine()) {
         String line = scanner.nextLine();
@@ -162,26 +198,22 @@ public class WifiBattery implements PanelService {
     return null; // Return null if no data is found
   }
 
-  byte[] wirelessImage() {
-    Wifi wifi = wireless();
-    List<Integer> integers = Stream.concat(Stream.of(
-                0b001010100,
-                0b000101010,
-                0b110010101,
-                0b110010101,
-                0b000101010,
-                0b001010100,
-                0b000000000),
-            IntStream.rangeClosed(0, 33)
-                .map(index ->
-                    (((100-wifi.link)/3 < index ? 0b111_111_111 : 0b000_0000_000) & 0b111_000_000) |
-                    (((90+(wifi.level + 30)) / 2 < index ?  0b111_111_111 : 0b000_0000_000) & 0b000_110_000) |
-                    (((-1 * (wifi.noise + 30)) / 6 < index ?  0b111_111_111 : 0b000_0000_000) & 0b000_001_100) |
-                    (((200-(wifi.level - wifi.noise)) / 6 < index ?  0b111_111_111 : 0b000_0000_000) & 0b000_000_011)
-                ).boxed())
-        .toList();
-
-    return BitUtils.packbits(integers);
+  PanelFrame wirelessImage(DrawBuffer image) {
+    Wifi wifi = wirelessSource.latest();
+    return wifi == null ? image.empty() : wirelessImage(wifi, image);
+  }
+
+  PanelFrame wirelessImage(Wifi wifi, DrawBuffer image) {
+    int[] rows = image.rows();
+    System.arraycopy(WIRELESS_FRAME_DATA, 0, rows, 0, WIRELESS_FRAME_DATA.length);
+    for (int index = 0; index < BAR_ROWS; index++) {
+      rows[WIRELESS_FRAME_DATA.length + index] =
+          (((100-wifi.link)/3 < index ? 0b111_111_111 : 0b000_0000_000) & 0b111_000_000) |
+          (((90+(wifi.level + 30)) / 2 < index ?  0b111_111_111 : 0b000_0000_000) & 0b000_110_000) |
+          (((-1 * (wifi.noise + 30)) / 6 < index ?  0b111_111_111 : 0b000_0000_000) & 0b000_001_100) |
+          (((200-(wifi.level - wifi.noise)) / 6 < index ?  0b111_111_111 : 0b000_0000_000) & 0b000_000_011);
+    }
+    return image.pack();
   }
 
   
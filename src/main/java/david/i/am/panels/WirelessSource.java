@@ -0,0 +1,31 @@
+package david.i.am.panels;
+
+import java.io.File;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * /proc/net/wireless, published as an immutable {@link WifiBattery.Wifi}.
+ */
+@Component
+public class WirelessSource extends MetricSource<WifiBattery.Wifi> {
+
+    private final File file;
+
+    @Autowired
+    public WirelessSource(@Value("${panels.metrics.wireless.refresh-ms:2000}") long refreshMs) {
+        this(new File(WifiBattery.PROC_NET_WIRELESS), refreshMs);
+    }
+
+    WirelessSource(File file, long refreshMs) {
+        super("wireless", refreshMs, Set.of("wifibattery"));
+        this.file = file;
+    }
+
+    @Override
+    protected WifiBattery.Wifi sample() {
+        return WifiBattery.wireless(file);
+    }
+}
@@ -0,0 +1,46 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HexFormat;
+import org.junit.jupiter.api.Test;
+
+class BarFramesTest {
+
+    // DRAW packets as the panel gets them: the icon rows, then a bar that fills from the bottom
+    private static final String RAM_0 =
+        "32ac0695236eae1a13000000000000000000000000000000000000000000000000000000000000000000000000000000";
+    private static final String RAM_50 =
+        "32ac0695236eae1a130000000000000000000000000000000000000080ffffffffffffffffffffffffffffffffffffff";
+    private static final String RAM_100 =
+        "32ac0695236eae1a130080ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff";
+    private static final String BATTERY_50 =
+        "32ac06ff4287fe07e03f00000000000000000000000000000000000080ffffffffffffffffffffffffffffffffffffff";
+
+    private static void assertFrame(String expected, PanelFrame frame) {
+        assertEquals(1, frame.packetCount());
+        assertEquals(expected, HexFormat.of().formatHex(frame.array(), 0, frame.length()));
+    }
+
+    @Test
+    void testServicesDrawTheKnownFrames() {
+        RamService ram = new RamService(null, null);
+        assertFrame(RAM_0, ram.ramImage(0));
+        assertFrame(RAM_50, ram.ramImage(50));
+        assertFrame(RAM_100, ram.ramImage(100));
+
+        WifiBattery wifiBattery = new WifiBattery(null, null, null);
+        assertFrame(BATTERY_50, wifiBattery.batteryImage(WifiBattery.Battery.builder().capacity(50).build()));
+    }
+
+    @Test
+    void testValuesAreClampedAndFramesShared() {
+        RamService ram = new RamService(null, null);
+        assertSame(ram.ramImage(0), ram.ramImage(-5));
+        assertSame(ram.ramImage(100), ram.ramImage(250));
+        assertFrame(RAM_100, ram.ramImage(250));
+
+        BarFrames frames = new BarFrames(1, (rows, value) -> rows[0] = value);
+        assertTrue(frames.empty().isEmpty());
+    }
+}
@@ -1,12 +1,48 @@
 package david.i.am.panels;
 
 import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class BitUtilsTest {
 
+    /**
+     * Checks the boxed List API and both primitive APIs against the same expectation.
+     * The primitive APIs pack into dirty buffers at an offset, to prove they clear
+     * their target range and stay inside it.
+     */
+    private static void assertPacks(byte[] expected, List<Integer> input) {
+        assertArrayEquals(expected, BitUtils.packbits(input));
+
+        int[] values = new int[input.size() + 2];
+        for (int i = 0; i < input.size(); i++) {
+            values[i + 1] = input.get(i);
+        }
+        byte[] dest = new byte[expected.length + 4];
+        Arrays.fill(dest, (byte) 0x5A);
+        int written = BitUtils.packbits(values, 1, input.size(), dest, 2);
+        assertEquals(expected.length, written);
+        assertArrayEquals(expected, Arrays.copyOfRange(dest, 2, 2 + written));
+        assertEquals((byte) 0x5A, dest[1]);
+        assertEquals((byte) 0x5A, dest[2 + written]);
+
+        IntBuffer intBuffer = IntBuffer.allocate(input.size());
+        input.forEach(intBuffer::put);
+        intBuffer.flip();
+        ByteBuffer direct = ByteBuffer.allocateDirect(expected.length + 1);
+        direct.put((byte) 0x5A);
+        assertEquals(expected.length, BitUtils.packbits(intBuffer, direct));
+        assertEquals(expected.length + 1, direct.position());
+        byte[] fromBuffer = new byte[expected.length];
+        direct.position(1);
+        direct.get(fromBuffer);
+        assertArrayEquals(expected, fromBuffer);
+    }
+
     @Test
     void testSingleValue() {
         List<Integer> input = List.of(0b101010101);
@@ -16,7 +52,7 @@ class BitUtilsTest {
         // buffer[1] |= (0x155 >> 8) & 0xFF -> 0x01
         // buffer = [0x55, 0x01]
         byte[] expected = {(byte) 0x55, (byte) 0x01};
-        assertArrayEquals(expected, BitUtils.packbits(input));
+        assertPacks(expected, input);
     }
 
     @Test
@@ -33,7 +69,7 @@ class BitUtilsTest {
         // buffer[2] |= (0x000 >> 7) & 0xFF -> 0x00
         // buffer = [0xFF, 0x01, 0x00]
         byte[] expected = {(byte) 0xFF, (byte) 0x01, (byte) 0x00};
-        assertArrayEquals(expected, BitUtils.packbits(input));
+        assertPacks(expected, input);
     }
 
     @Test
@@ -47,6 +83,15 @@ class BitUtilsTest {
         // buffer[3] |= (0x1FF >> 6) & 0xFF -> 0x07
         // buffer = [0xFF, 0x01, 0xFC, 0x07]
         byte[] expected = {(byte) 0xFF, (byte) 0x01, (byte) 0xFC, (byte) 0x07};
-        assertArrayEquals(expected, BitUtils.packbits(input));
+        assertPacks(expected, input);
+    }
+
+    @Test
+    void testPackedPacketHasHeaderInPlace() {
+        int[] rows = {0b111111111, 0b000000000, 0b111111111};
+        PanelFrame frame = new PanelFrame().addPacked(CommunicationCreator.CommandVals.DRAW, rows, 0, rows.length);
+        byte[] expected = {(byte) 0x32, (byte) 0xAC, (byte) 0x06, (byte) 0xFF, (byte) 0x01, (byte) 0xFC, (byte) 0x07};
+        assertEquals(1, frame.packetCount());
+        assertArrayEquals(expected, Arrays.copyOf(frame.array(), frame.length()));
     }
 }
@@ -0,0 +1,255 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the writer against {@link FakePanelTransport}, so no hardware is needed.
+ */
+class CommunicationCreatorTest {
+
+    private static PanelFrame draw(int seed) {
+        byte[] payload = new byte[45];
+        payload[0] = (byte) seed;
+        payload[1] = (byte) (seed >> 8);
+        return new PanelFrame().add(CommunicationCreator.CommandVals.DRAW, payload);
+    }
+
+    /**
+     * A greyscale upload: column 4 at {@code level}, the others at 50.
+     */
+    private static PanelFrame greyscale(int level) {
+        PanelFrame frame = new PanelFrame();
+        for (int column = 0; column < GreyscaleEncoder.COLUMNS; column++) {
+            int start = frame.reserve(CommunicationCreator.CommandVals.STAGE_GREY_COL, GreyscaleEncoder.ROWS + 1);
+            frame.array()[start] = (byte) column;
+            Arrays.fill(frame.array(), start + 1, start + 1 + GreyscaleEncoder.ROWS,
+                (byte) (column == 4 ? level : 50));
+        }
+        frame.reserve(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, 0);
+        return frame;
+    }
+
+    private static void awaitIdle(CommunicationCreator device) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (device.getFramesWritten() + device.getFramesSuperseded() + device.getFramesSuppressed()
+            < device.getFramesSubmitted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testCalibratesAgainstTheDevice() throws Exception {
+        FakePanelTransport fake = new FakePanelTransport("fake0", 115200);
+        CommunicationCreator device = new CommunicationCreator(fake, 115200, 0, 30);
+        try {
+            device.postConstruct();
+            // Calibration waits for the first frame, which is written with the default spacing
+            assertFalse(device.awaitCalibration(100));
+            device.sendFrame(draw(1));
+            assertTrue(device.awaitCalibration(5_000));
+            assertTrue(device.getTimeToFirstFrameMs() > 0);
+            // Nine 38-byte packets take ~3.3 ms each on the wire at 115200 baud, more than the firmware needs
+            long spacing = device.getPacketSpacingNanos();
+            assertTrue(spacing > 2_500_000 && spacing < LinkPacer.MAX_PACKET_SPACING_NANOS, "spacing " + spacing);
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testGreyscaleFrameAfterCalibrationStagesEveryColumn() throws Exception {
+        FakePanelTransport fake = new FakePanelTransport("fake0", 115200);
+        CommunicationCreator device = new CommunicationCreator(fake, 115200, 0, 30);
+        device.setGreyStagingKept(true);
+        try {
+            device.postConstruct();
+            device.sendFrame(greyscale(50));
+            assertTrue(device.awaitCalibration(5_000));
+            fake.takeReceived();
+
+            // Only column 4 changed, but calibration staged blank columns over the rest
+            device.sendFrame(greyscale(90));
+            awaitIdle(device);
+            byte[] written = fake.takeReceived();
+            assertEquals(GreyscaleEncoder.COLUMNS * (3 + 1 + GreyscaleEncoder.ROWS) + 3, written.length);
+            assertEquals(50, written[3 + 1], "column 0 staged again");
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testCongestedLinkSupersedesFramesInsteadOfQueueing() throws Exception {
+        // 9600 baud: a 48-byte frame takes 50 ms on the wire
+        FakePanelTransport fake = new FakePanelTransport("fake0", 9600);
+        CommunicationCreator device = new CommunicationCreator(fake, 9600, 0, 30);
+        try {
+            for (int i = 0; i < 50; i++) {
+                device.sendFrame(draw(i));
+            }
+            awaitIdle(device);
+            assertEquals(50, device.getFramesSubmitted());
+            assertTrue(device.getFramesSuperseded() > 0);
+            assertEquals(50, device.getFramesWritten() + device.getFramesSuperseded());
+            assertEquals(device.getFramesWritten() * 48, fake.getBytesReceived());
+            assertTrue(device.getTargetFps() < 30, "the governor backed off: " + device.getTargetFps());
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testPartialWriteWidensPacketSpacing() throws Exception {
+        // A 16-byte driver buffer that cannot drain within the 1 ms write timeout
+        FakePanelTransport fake = new FakePanelTransport("fake0", 9600, 16, 1, 0);
+        CommunicationCreator device = new CommunicationCreator(fake, 9600, 0, 30);
+        try {
+            device.sendFrame(draw(1));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (fake.getPartialWrites() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            assertTrue(fake.getPartialWrites() > 0);
+            assertEquals(0, device.getFramesWritten());
+            assertEquals(2 * LinkPacer.DEFAULT_PACKET_SPACING_NANOS, device.getPacketSpacingNanos());
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testOpensOnTheWriterThreadAndKeepsWhatWasSentMeanwhile() throws Exception {
+        FakePanelTransport fake = new FakePanelTransport("slow0", 115200);
+        CountDownLatch opening = new CountDownLatch(1);
+        CommunicationCreator device = new CommunicationCreator("slow0", () -> {
+            opening.await();
+            return fake;
+        }, 115200, 0, 30);
+        try {
+            device.setBrightness(10);
+            device.sendFrame(draw(1));
+            assertFalse(device.isConnected());
+            opening.countDown();
+            awaitIdle(device);
+            assertEquals(1, device.getFramesWritten());
+            assertEquals(4 + 48, fake.getBytesReceived());
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testReopensAnUnpluggedPortWithTheLatestFrame() throws Exception {
+        AtomicReference<FakePanelTransport> plugged = new AtomicReference<>(new FakePanelTransport("fake0", 115200));
+        AtomicInteger opens = new AtomicInteger();
+        CommunicationCreator device = new CommunicationCreator("fake0", () -> {
+            opens.incrementAndGet();
+            FakePanelTransport module = plugged.get();
+            if (module == null) {
+                throw new IllegalStateException("No module");
+            }
+            return module;
+        }, 115200, 0, 30);
+        device.setMaxReconnectDelayMs(100);
+        try {
+            device.sendFrame(draw(1));
+            awaitIdle(device);
+            FakePanelTransport first = plugged.getAndSet(null);
+            first.close(); // unplugged
+            device.sendFrame(draw(2));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (opens.get() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertFalse(device.isConnected());
+            assertTrue(opens.get() >= 4, "retried while unplugged");
+
+            FakePanelTransport second = new FakePanelTransport("fake0", 115200);
+            plugged.set(second);
+            deadline = System.currentTimeMillis() + 5_000;
+            while (second.getBytesReceived() < 48 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(device.isConnected());
+            assertEquals(1, device.getReconnects());
+            byte[] shown = second.takeReceived();
+            assertEquals(48, shown.length, "the frame that failed is written once the module is back");
+            assertEquals(2, shown[3]);
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testMetersReportWrittenBytesAndFrames() throws Exception {
+        FakePanelTransport fake = new FakePanelTransport("fake0", 115200);
+        CommunicationCreator device = new CommunicationCreator(fake, 115200, 0, 30);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        device.bindTo(registry);
+        try {
+            device.sendFrame(draw(1));
+            awaitIdle(device);
+            assertEquals(1, device.getFramesWritten());
+            assertEquals(48.0, registry.get("panels.serial.bytes").tag("port", "fake0").functionCounter().count());
+            assertEquals(1.0, registry.get("panels.serial.packets").tag("port", "fake0").functionCounter().count());
+            assertEquals(1.0, registry.get("panels.frames").tag("port", "fake0").tag("outcome", "written")
+                .functionCounter().count());
+            assertEquals(1, registry.get("panels.serial.write").tag("port", "fake0").timer().count());
+        } finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void testRepliesReachTheirQueriesAndUnansweredQueriesTimeOut() throws Exception {
+        FakePanelTransport fake = new FakePanelTransport("fake0", 115200);
+        CommunicationCreator device = new CommunicationCreator(fake, 115200, 0, 30);
+        try {
+            // The fake device answers VERSION only
+            CompletableFuture<byte[]> unanswered = device.query(CommunicationCreator.CommandVals.GAME_STATUS, null);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> unanswered.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, failure.getCause());
+
+            CompletableFuture<String> first = device.queryVersion();
+            device.sendFrame(draw(1));
+            CompletableFuture<String> second = device.queryVersion();
+            assertEquals("v0.1.9", first.get(5, TimeUnit.SECONDS));
+            assertEquals("v0.1.9", second.get(5, TimeUnit.SECONDS));
+            awaitIdle(device);
+            assertEquals(1, device.getFramesWritten());
+        } finally {
+            device.close();
+        }
+        assertTrue(device.query(CommunicationCreator.CommandVals.VERSION, null).isCompletedExceptionally());
+    }
+
+    @Test
+    void testQueriesDoNotForgetWhatTheDeviceShows() throws Exception {
+        FakePanelTransport fake = new FakePanelTransport("fake0", 115200);
+        CommunicationCreator device = new CommunicationCreator(fake, 115200, 5_000, 30);
+        try {
+            device.sendFrame(draw(1));
+            awaitIdle(device);
+            assertEquals("v0.1.9", device.queryVersion().get(5, TimeUnit.SECONDS));
+            device.sendFrame(draw(1));
+            awaitIdle(device);
+            assertEquals(1, device.getFramesWritten());
+            assertEquals(1, device.getFramesSuppressed(), "the same frame is not written again after a query");
+        } finally {
+            device.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CompositorTest {
+
+    private static final int ROWS = LayerPanel.ROWS;
+
+    /**
+     * A profile that draws the same greyscale level on every LED.
+     */
+    private static CanvasService fill(String name, int level) {
+        return new CanvasService() {
+            @Override
+            public String getProfileName() {
+                return name;
+            }
+
+            @Override
+            public void show(CommunicationCreator panel, int index, int count) {
+                PanelFrame frame = new PanelFrame();
+                for (int column = 0; column < LayerPanel.COLUMNS; column++) {
+                    int start = frame.reserve(CommunicationCreator.CommandVals.STAGE_GREY_COL, ROWS + 1);
+                    frame.array()[start] = (byte) column;
+                    Arrays.fill(frame.array(), start + 1, start + 1 + ROWS, (byte) level);
+                }
+                frame.reserve(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, 0);
+                panel.sendFrame(frame);
+            }
+        };
+    }
+
+    /**
+     * A profile that lights one LED with a DRAW bitmap, while it is shown.
+     */
+    private static CanvasService dot(ProfileState profileState, int column, int row) {
+        return new CanvasService() {
+            @Override
+            public String getProfileName() {
+                return "dot";
+            }
+
+            @Override
+            public void show(CommunicationCreator panel, int index, int count) {
+                if (!isShown(profileState, panel) || !panel.isFrameDue()) {
+                    return;
+                }
+                byte[] bitmap = new byte[ExternalFrameService.DRAW_BYTES];
+                int bit = row * LayerPanel.COLUMNS + column;
+                bitmap[bit / 8] |= (byte) (1 << (bit % 8));
+                panel.sendDraw(bitmap);
+            }
+        };
+    }
+
+    private static int level(PanelFrame frame, int column, int row) {
+        // Column packets come first, in order: the column index, then a level per row
+        return frame.array()[frame.packetOffset(column) + PanelFrame.HEADER_LENGTH + 1 + row] & 0xFF;
+    }
+
+    @Test
+    void testLayersBlendIntoOneGreyscaleFrame() {
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile(Compositor.PROFILE);
+        Layer bottom = new Layer(fill("fill", 100), 255);
+        Layer top = new Layer(dot(profileState, 2, 3), 200);
+        top.setOpacity(128);
+        top.setBlackTransparent(true);
+        Compositor compositor = new Compositor(profileState, List.of(bottom, top));
+
+        PanelFrame frame = compositor.compose(0, 1);
+        assertEquals(LayerPanel.COLUMNS + 1, frame.packetCount());
+        assertEquals(CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER.getValue(),
+            frame.packetCommand(LayerPanel.COLUMNS));
+        assertEquals(100 + (200 - 100) * 128 / 255, level(frame, 2, 3), "the dot, half over the fill");
+        assertEquals(100, level(frame, 2, 4), "black in the top layer is transparent");
+
+        top.setRegion(3, 0, 6, ROWS);
+        assertEquals(100, level(compositor.compose(0, 1), 2, 3), "the dot is outside the region");
+        top.setRegion(0, 0, LayerPanel.COLUMNS, ROWS);
+        byte[] mask = new byte[LayerPanel.COLUMNS * ROWS];
+        mask[2 * ROWS + 3] = (byte) 255;
+        top.setMask(mask);
+        top.setOpacity(255);
+        top.setBlackTransparent(false);
+        frame = compositor.compose(0, 1);
+        assertEquals(200, level(frame, 2, 3), "the mask lets the dot through");
+        assertEquals(100, level(frame, 5, 5), "and nothing else");
+    }
+
+    @Test
+    void testOnlyTheCompositeIsWrittenToThePanel() throws Exception {
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile(Compositor.PROFILE);
+        Compositor compositor = new Compositor(profileState,
+            List.of(new Layer(fill("fill", 10), 255), new Layer(dot(profileState, 0, 0), 255)));
+        FakePanelTransport fake = new FakePanelTransport("fake0", 115200);
+        CommunicationCreator panel = new CommunicationCreator(fake, 115200, 0, 30);
+        try {
+            compositor.show(panel, 0, 1);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (panel.getFramesWritten() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, panel.getFramesSubmitted());
+            assertEquals(LayerPanel.COLUMNS + 1, fake.getPacketsReceived());
+        } finally {
+            panel.close();
+        }
+    }
+}
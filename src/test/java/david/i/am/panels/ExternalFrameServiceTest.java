@@ -0,0 +1,128 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ExternalFrameServiceTest {
+
+    private static void message(DataOutputStream out, int panel, CommunicationCreator.CommandVals command,
+                                byte[] payload) throws Exception {
+        out.writeByte(panel);
+        out.writeByte(command.getValue());
+        out.writeShort(payload.length);
+        out.write(payload);
+    }
+
+    private static void awaitWritten(CommunicationCreator device, long frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (device.getFramesWritten() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testStreamedFramesReplaceUnshownOnesAndShowWhenActive() throws Exception {
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile("cpu");
+        ExternalFrameService service = new ExternalFrameService(profileState);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] grey = new byte[ExternalFrameService.GREYSCALE_BYTES];
+        grey[ExternalFrameService.ROWS] = 7; // first LED of the second column
+        for (int i = 0; i < 3; i++) {
+            byte[] draw = new byte[ExternalFrameService.DRAW_BYTES];
+            draw[0] = (byte) i;
+            message(out, 0, CommunicationCreator.CommandVals.DRAW, draw);
+        }
+        message(out, 1, CommunicationCreator.CommandVals.DRAW_GREY_COL_BUFFER, grey);
+        message(out, 2, CommunicationCreator.CommandVals.BRIGHTNESS, new byte[]{40});
+        assertEquals(5, service.pushAll(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(4, service.getStats().getReceived());
+        assertEquals(2, service.getStats().getDropped(), "the first two left frames were never shown");
+
+        FakePanelTransport leftPort = new FakePanelTransport("left", 115200);
+        FakePanelTransport rightPort = new FakePanelTransport("right", 115200);
+        CommunicationCreator left = new CommunicationCreator(leftPort, 115200, 0, 1000);
+        CommunicationCreator right = new CommunicationCreator(rightPort, 115200, 0, 1000);
+        try {
+            service.showLeft(left);
+            assertEquals(0, left.getFramesSubmitted(), "not shown while another profile is active");
+
+            profileState.setActiveProfile(ExternalFrameService.PROFILE);
+            service.showLeft(left);
+            service.showRight(right);
+            awaitWritten(left, 1);
+            awaitWritten(right, 1);
+            assertEquals(2, service.getStats().getShown());
+            byte[] leftBytes = leftPort.takeReceived();
+            // Brightness, then the last DRAW frame
+            assertEquals(CommunicationCreator.CommandVals.BRIGHTNESS.getValue(), leftBytes[2]);
+            assertEquals(40, leftBytes[3]);
+            assertEquals(CommunicationCreator.CommandVals.DRAW.getValue(), leftBytes[6]);
+            assertEquals(2, leftBytes[7]);
+            // Brightness, nine staged columns, then the draw
+            assertEquals(4 + 9 * 38 + 3, rightPort.getBytesReceived());
+
+            service.showLeft(left);
+            assertEquals(1, left.getFramesSubmitted(), "a frame is shown once");
+        } finally {
+            left.close();
+            right.close();
+        }
+    }
+
+    @Test
+    void testMalformedStreamIsRejected() {
+        ExternalFrameService service = new ExternalFrameService(new ProfileState());
+        byte[] truncated = {0, CommunicationCreator.CommandVals.DRAW.getValue(), 0, 39, 1, 2, 3};
+        assertThrows(ParseError.class, () -> service.pushAll(new ByteArrayInputStream(truncated)));
+        byte[] wrongLength = {0, CommunicationCreator.CommandVals.DRAW.getValue(), 0, 2, 1, 2};
+        assertThrows(ParseError.class, () -> service.pushAll(new ByteArrayInputStream(wrongLength)));
+    }
+
+    @Test
+    void testStreamReportsCountsWhileTheBodyIsOpen() throws Exception {
+        ExternalFrameService service = new ExternalFrameService(new ProfileState());
+        ExternalFrameController controller = new ExternalFrameController(service);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message(new DataOutputStream(bytes), 0, CommunicationCreator.CommandVals.DRAW,
+            new byte[ExternalFrameService.DRAW_BYTES]);
+        byte[] draw = bytes.toByteArray();
+        // the producer pauses after the first frame, then sends another
+        InputStream pause = new InputStream() {
+            @Override
+            public int read() {
+                try {
+                    Thread.sleep(ExternalFrameController.STREAM_STATS_MS + 50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return -1;
+            }
+        };
+        InputStream body = new SequenceInputStream(Collections.enumeration(List.of(
+            new ByteArrayInputStream(draw), pause, new ByteArrayInputStream(draw))));
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        controller.stream(body).writeTo(response);
+        String[] lines = response.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length, response.toString(StandardCharsets.UTF_8));
+        assertEquals("{\"received\":2,\"shown\":0,\"dropped\":1}", lines[0], "reported after the pause");
+        assertEquals(lines[0], lines[1], "and when the body ended");
+
+        response.reset();
+        byte[] truncated = {0, CommunicationCreator.CommandVals.DRAW.getValue(), 0, 39, 1};
+        controller.stream(new ByteArrayInputStream(truncated)).writeTo(response);
+        assertTrue(response.toString(StandardCharsets.UTF_8).startsWith("{\"error\":\"Stream ended inside message 0"));
+    }
+}
@@ -0,0 +1,59 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class FrameGovernorTest {
+
+    private static final int GREY_FRAME_BYTES = 9 * (3 + 35) + 3;
+
+    @Test
+    void testGrantFitsTheBaudRateBudget() {
+        FrameGovernor governor = new FrameGovernor(115200, 60);
+        long now = System.nanoTime();
+        assertEquals(10368, governor.getBudgetBytesPerSecond(), 0.001);
+        assertEquals(60, governor.targetFps(now), 0.001, "nothing submitted yet: the configured maximum");
+
+        governor.frameSubmitted(GREY_FRAME_BYTES, 0, now);
+        assertEquals(10368.0 / GREY_FRAME_BYTES, governor.targetFps(now), 0.001);
+        assertFalse(governor.isFrameDue(now));
+        assertTrue(governor.isFrameDue(now + 1_000_000_000L / 30 + 1_000_000));
+
+        governor.controlWritten(1000, now);
+        assertEquals(9368.0 / GREY_FRAME_BYTES, governor.targetFps(now), 0.001,
+            "control traffic comes out of the same budget");
+    }
+
+    @Test
+    void testFallingBehindLowersTheGrantUntilFramesGoOut() {
+        FrameGovernor governor = new FrameGovernor(115200, 20);
+        long now = System.nanoTime();
+        governor.frameSubmitted(48, 0, now);
+        assertEquals(20, governor.targetFps(now), 0.001);
+
+        governor.frameSuperseded();
+        governor.frameSuperseded();
+        assertEquals(20 * 0.75 * 0.75, governor.targetFps(now), 0.001);
+
+        for (int i = 0; i < 100; i++) {
+            governor.frameWritten(48);
+        }
+        assertEquals(20, governor.targetFps(now), 0.001);
+
+        governor.frameSubmitted(48, 12, now);
+        assertEquals(12, governor.targetFps(now), 0.001, "capped by what the link was measured to sustain");
+    }
+
+    @Test
+    void testFramesWrittenAsChangesEarnAHigherRate() {
+        FrameGovernor governor = new FrameGovernor(115200, 120);
+        long now = System.nanoTime();
+        governor.frameSubmitted(GREY_FRAME_BYTES, 0, now);
+        governor.frameWritten(GREY_FRAME_BYTES);
+        assertEquals(10368.0 / GREY_FRAME_BYTES, governor.targetFps(now), 0.001);
+
+        governor.frameWritten(3 * 38 + 3);
+        assertEquals(10368.0 / (3 * 38 + 3), governor.targetFps(now), 0.001);
+    }
+}
@@ -0,0 +1,83 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrameRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] packet(CommunicationCreator.CommandVals command, int payloadLength, int seed) {
+        byte[] payload = new byte[payloadLength];
+        for (int i = 0; i < payloadLength; i++) {
+            payload[i] = (byte) (seed + i);
+        }
+        PanelFrame frame = new PanelFrame().add(command, payload);
+        return Arrays.copyOf(frame.array(), frame.length());
+    }
+
+    @Test
+    void testRecordingReplaysToTheSameBytesAndProfiles() throws Exception {
+        Path recording = tempDir.resolve("panels.lmpr");
+        ByteArrayOutputStream leftBytes = new ByteArrayOutputStream();
+        try (FrameRecorder recorder = new FrameRecorder(recording)) {
+            for (int i = 0; i < 5; i++) {
+                byte[] draw = packet(CommunicationCreator.CommandVals.DRAW, 45, i);
+                recorder.record("left", draw, 0, draw.length);
+                leftBytes.write(draw);
+                byte[] column = packet(CommunicationCreator.CommandVals.STAGE_GREY_COL, 35, i);
+                recorder.record("right", column, 0, column.length);
+            }
+            byte[] brightness = packet(CommunicationCreator.CommandVals.BRIGHTNESS, 1, 0);
+            recorder.record("left", brightness, 0, brightness.length);
+            leftBytes.write(brightness);
+        }
+
+        RecordingStats stats = RecordingStats.of(recording);
+        RecordingStats.Port left = stats.getPorts().get("left");
+        RecordingStats.Port right = stats.getPorts().get("right");
+        assertEquals(6, left.getPackets());
+        assertEquals(5, left.getFrames());
+        assertEquals(5 * 48 + 4, left.getBytes());
+        assertEquals(5, right.getPackets());
+        assertEquals(0, right.getFrames(), "staged columns alone do not draw anything");
+
+        FakePanelTransport fakeLeft = new FakePanelTransport("left", 115200);
+        FakePanelTransport fakeRight = new FakePanelTransport("right", 115200);
+        FrameReplayer replayer = new FrameReplayer(port -> port.equals("left") ? fakeLeft : fakeRight, 0);
+        assertEquals(11, replayer.replay(recording));
+        assertArrayEquals(leftBytes.toByteArray(), fakeLeft.takeReceived());
+        assertEquals(5, fakeRight.getPacketsReceived());
+        replayer.close();
+    }
+
+    @Test
+    void testRecordsReachTheFileWhileTrafficHasStopped() throws Exception {
+        Path recording = tempDir.resolve("quiet.lmpr");
+        try (FrameRecorder recorder = new FrameRecorder(recording)) {
+            byte[] draw = packet(CommunicationCreator.CommandVals.DRAW, 45, 1);
+            recorder.record("left", draw, 0, draw.length);
+
+            long deadline = System.currentTimeMillis() + 10 * FrameRecorder.FLUSH_INTERVAL_MS;
+            while (Files.size(recording) == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            RecordingStats.Port left = RecordingStats.of(recording).getPorts().get("left");
+            assertNotNull(left, "flushed with no further packet to trigger it");
+            assertEquals(1, left.getPackets());
+
+            // More than a buffer's worth goes through the spare buffer without losing any
+            for (int i = 0; i < 5000; i++) {
+                recorder.record("right", draw, 0, draw.length);
+            }
+        }
+        assertEquals(5000, RecordingStats.of(recording).getPorts().get("right").getPackets());
+    }
+}
@@ -0,0 +1,133 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import david.i.am.panels.CommunicationCreator.CommandVals;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class GreyscaleEncoderTest {
+
+    private static final int COLUMNS = GreyscaleEncoder.COLUMNS;
+    private static final int ROWS = GreyscaleEncoder.ROWS;
+    private static final int FULL_UPLOAD = COLUMNS * (3 + 1 + ROWS) + 3;
+
+    /**
+     * The firmware as far as frames go: a staging buffer, which it may clear once drawn, and the display.
+     */
+    private static final class Device {
+        private final boolean clearsStaging;
+        private final byte[] staged = new byte[COLUMNS * ROWS];
+        private final byte[] grid = new byte[COLUMNS * ROWS];
+        private final byte[] shown = new byte[COLUMNS * ROWS];
+
+        Device(boolean clearsStaging) {
+            this.clearsStaging = clearsStaging;
+        }
+
+        void write(PanelFrame frame) {
+            byte[] data = frame.array();
+            for (int i = 0; i < frame.packetCount(); i++) {
+                int payload = frame.packetOffset(i) + PanelFrame.HEADER_LENGTH;
+                byte command = frame.packetCommand(i);
+                if (command == CommandVals.STAGE_GREY_COL.getValue()) {
+                    System.arraycopy(data, payload + 1, staged, data[payload] * ROWS, ROWS);
+                } else if (command == CommandVals.DRAW_GREY_COL_BUFFER.getValue()) {
+                    System.arraycopy(staged, 0, grid, 0, grid.length);
+                    System.arraycopy(grid, 0, shown, 0, grid.length);
+                    if (clearsStaging) {
+                        java.util.Arrays.fill(staged, (byte) 0);
+                    }
+                } else if (command == CommandVals.SET_PIXEL_COLUMN.getValue()) {
+                    for (int row = 0; row < ROWS; row++) {
+                        boolean lit = (data[payload + 1 + row / 8] >> (row % 8) & 1) != 0;
+                        grid[data[payload] * ROWS + row] = (byte) (lit ? 0xFF : 0);
+                    }
+                } else if (command == CommandVals.FLUSH_FRAMEBUFFER.getValue()) {
+                    System.arraycopy(grid, 0, shown, 0, grid.length);
+                } else if (command == CommandVals.DRAW.getValue()) {
+                    for (int led = 0; led < COLUMNS * ROWS; led++) {
+                        int bit = led % ROWS * COLUMNS + led / ROWS;
+                        grid[led] = (byte) ((data[payload + bit / 8] >> (bit % 8) & 1) != 0 ? 0xFF : 0);
+                    }
+                    System.arraycopy(grid, 0, shown, 0, grid.length);
+                } else {
+                    fail("Unexpected command " + command);
+                }
+            }
+        }
+    }
+
+    private static PanelFrame upload(byte[] levels) {
+        PanelFrame frame = new PanelFrame();
+        for (int column = 0; column < COLUMNS; column++) {
+            int start = frame.reserve(CommandVals.STAGE_GREY_COL, ROWS + 1);
+            frame.array()[start] = (byte) column;
+            System.arraycopy(levels, column * ROWS, frame.array(), start + 1, ROWS);
+        }
+        frame.reserve(CommandVals.DRAW_GREY_COL_BUFFER, 0);
+        return frame;
+    }
+
+    @Test
+    void testOneChangedColumnIsAllThatIsWritten() {
+        GreyscaleEncoder encoder = new GreyscaleEncoder();
+        byte[] levels = new byte[COLUMNS * ROWS];
+        assertEquals(FULL_UPLOAD, encoder.encode(upload(levels)).length(), "nothing known yet: in full");
+
+        levels[4 * ROWS + 10] = 40;
+        PanelFrame delta = encoder.encode(upload(levels));
+        assertEquals(2, delta.packetCount());
+        assertEquals(CommandVals.STAGE_GREY_COL.getValue(), delta.packetCommand(0));
+        assertEquals(4, delta.array()[delta.packetOffset(0) + PanelFrame.HEADER_LENGTH]);
+        assertEquals(CommandVals.DRAW_GREY_COL_BUFFER.getValue(), delta.packetCommand(1));
+
+        levels[4 * ROWS + 10] = (byte) 0xFF;
+        delta = encoder.encode(upload(levels));
+        assertEquals(3 + 1 + 5 + 3, delta.length(), "fully lit or off: one pixel column and a flush");
+        assertEquals(CommandVals.SET_PIXEL_COLUMN.getValue(), delta.packetCommand(0));
+        assertEquals(CommandVals.FLUSH_FRAMEBUFFER.getValue(), delta.packetCommand(1));
+
+        encoder.invalidate();
+        assertEquals(FULL_UPLOAD, encoder.encode(upload(levels)).length());
+    }
+
+    @Test
+    void testTheDeviceShowsEveryFrameWhateverItDoesWithStaging() {
+        for (boolean clearsStaging : new boolean[]{true, false}) {
+            for (boolean assumeKept : new boolean[]{false, !clearsStaging}) {
+                Random random = new Random(7);
+                GreyscaleEncoder encoder = new GreyscaleEncoder();
+                encoder.setStagingKept(assumeKept);
+                Device device = new Device(clearsStaging);
+                byte[] levels = new byte[COLUMNS * ROWS];
+                long written = 0;
+                for (int frame = 0; frame < 500; frame++) {
+                    int change = random.nextInt(10);
+                    if (change == 0) {
+                        for (int led = 0; led < levels.length; led++) {
+                            levels[led] = (byte) (random.nextBoolean() ? 0xFF : 0);
+                        }
+                    } else if (change == 1) {
+                        random.nextBytes(levels);
+                    } else {
+                        // an overlay animating a column or two
+                        for (int i = 0; i < change % 3; i++) {
+                            int column = random.nextInt(COLUMNS);
+                            int level = random.nextBoolean() ? 0xFF : random.nextInt(256);
+                            for (int row = 0; row < ROWS; row++) {
+                                levels[column * ROWS + row] = (byte) (random.nextInt(3) == 0 ? level : 0);
+                            }
+                        }
+                    }
+                    PanelFrame packets = encoder.encode(upload(levels));
+                    written += packets.length();
+                    device.write(packets);
+                    assertArrayEquals(levels, device.shown,
+                        "frame " + frame + ", clears staging " + clearsStaging + ", assumed kept " + assumeKept);
+                }
+                assertTrue(written < 500L * FULL_UPLOAD / 2, "wrote " + written + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class LinkPacerTest {
+
+    @Test
+    void testCalibrationAddsMarginAndStaysInBounds() {
+        LinkPacer pacer = new LinkPacer();
+        assertEquals(LinkPacer.DEFAULT_PACKET_SPACING_NANOS, pacer.getPacketSpacingNanos());
+
+        pacer.calibrate(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1250), pacer.getPacketSpacingNanos());
+
+        pacer.calibrate(0);
+        assertEquals(LinkPacer.MIN_PACKET_SPACING_NANOS, pacer.getPacketSpacingNanos());
+
+        for (int i = 0; i < 10; i++) {
+            pacer.backOff();
+        }
+        assertEquals(LinkPacer.MAX_PACKET_SPACING_NANOS, pacer.getPacketSpacingNanos());
+    }
+
+    @Test
+    void testBackedOffSpacingRecoversAfterCleanWrites() {
+        LinkPacer pacer = new LinkPacer();
+        long calibrated = TimeUnit.MICROSECONDS.toNanos(1250);
+        pacer.calibrate(TimeUnit.MILLISECONDS.toNanos(1));
+        pacer.backOff();
+        assertEquals(2 * calibrated, pacer.getPacketSpacingNanos());
+
+        for (int i = 0; i < LinkPacer.RECOVERY_PACKETS - 1; i++) {
+            pacer.packetWritten(38, 0, 1000);
+        }
+        assertEquals(2 * calibrated, pacer.getPacketSpacingNanos(), "not before a full run of clean writes");
+
+        pacer.backOff();
+        for (int i = 0; i < LinkPacer.RECOVERY_PACKETS - 1; i++) {
+            pacer.packetWritten(38, 0, 1000);
+        }
+        assertEquals(4 * calibrated, pacer.getPacketSpacingNanos(), "a failure starts the run over");
+
+        for (int i = 0; i < 10 * LinkPacer.RECOVERY_PACKETS; i++) {
+            pacer.packetWritten(38, 0, 1000);
+        }
+        assertEquals(calibrated, pacer.getPacketSpacingNanos(), "back to the calibrated spacing, and no lower");
+    }
+
+    @Test
+    void testPacketsAreSpacedFromTheirStarts() throws Exception {
+        LinkPacer pacer = new LinkPacer();
+        pacer.calibrate(TimeUnit.MILLISECONDS.toNanos(4)); // 5 ms with the margin
+        long first = pacer.awaitSlot();
+        long second = pacer.awaitSlot();
+        long third = pacer.awaitSlot();
+        assertTrue(second - first >= pacer.getPacketSpacingNanos());
+        assertTrue(third - second >= pacer.getPacketSpacingNanos());
+
+        pacer.frameWritten(first, third);
+        // Three packets 5 ms apart occupy the link for 15 ms at least
+        assertTrue(pacer.getMaxFrameRate() <= 1000.0 / 15 + 0.01);
+    }
+}
@@ -0,0 +1,152 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class MetricSamplerTest {
+
+    static class CountingSource extends MetricSource<Integer> {
+        int samples;
+        boolean fail;
+
+        CountingSource(long refreshMs, String profile) {
+            super("counting", refreshMs, Set.of(profile));
+        }
+
+        @Override
+        protected Integer sample() {
+            if (fail) {
+                throw new ParseError("boom", null);
+            }
+            return ++samples;
+        }
+    }
+
+    @Test
+    void testOnlySourcesOfTheActiveProfileAreSampled() {
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile("cpu");
+        CountingSource ram = new CountingSource(60_000, "ram");
+        MetricSampler sampler = new MetricSampler(List.of(ram), profileState, 250);
+
+        sampler.tick();
+        assertNull(ram.latest());
+
+        profileState.setActiveProfile("ram");
+        sampler.tick();
+        sampler.tick();
+        assertEquals(1, (int) ram.latest(), "refreshed once, then not due again until the interval passes");
+
+        profileState.setActiveProfile("cpu");
+        sampler.tick();
+        profileState.setActiveProfile("ram");
+        sampler.tick();
+        assertEquals(2, (int) ram.latest(), "a source coming back from idle is refreshed straight away");
+    }
+
+    @Test
+    void testASampleThatFindsNothingWaitsForTheInterval() {
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile("wifibattery");
+        int[] reads = new int[1];
+        MetricSource<String> wireless = new MetricSource<>("none", 60_000, Set.of("wifibattery")) {
+            @Override
+            protected String sample() {
+                reads[0]++;
+                return null; // no wireless interface
+            }
+        };
+        MetricSampler sampler = new MetricSampler(List.of(wireless), profileState, 250);
+
+        sampler.tick();
+        sampler.tick();
+        sampler.tick();
+        assertEquals(1, reads[0]);
+    }
+
+    @Test
+    void testCpuLoadStartsOverAfterIdle() throws Exception {
+        Path stat = Files.createTempFile("stat", "");
+        String line = "cpu  %d 0 0 %d 0 0 0 0 0 0\ncpu0 %d 0 0 %d 0 0 0 0 0 0\n";
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile("cpu");
+        ProcStatSource source = new ProcStatSource(stat, 60_000, CpuLayout.Mode.ONE_TO_ONE);
+        MetricSampler sampler = new MetricSampler(List.of(source), profileState, 250);
+        short[] table = new short[2 * CpuLoad.FIELDS];
+        try {
+            Files.writeString(stat, String.format(line, 0, 0, 0, 0));
+            sampler.tick();
+            assertEquals(0, source.getLoad().read(table), "a baseline only");
+            Files.writeString(stat, String.format(line, 100, 0, 100, 0));
+            sampler.tick();
+            assertEquals(100, readUser(source, table));
+
+            profileState.setActiveProfile("ram");
+            sampler.tick();
+            // idle for a long time, all of it idle
+            Files.writeString(stat, String.format(line, 100, 10_000, 100, 10_000));
+            profileState.setActiveProfile("cpu");
+            sampler.tick();
+            assertEquals(0, source.getLoad().read(table), "the old sample is not diffed against");
+            Files.writeString(stat, String.format(line, 150, 10_050, 150, 10_050));
+            sampler.tick();
+            assertEquals(50, readUser(source, table), "measured from the fresh baseline, on the next tick");
+        } finally {
+            source.close();
+            Files.delete(stat);
+        }
+    }
+
+    @Test
+    void testCompositeLayersKeepTheirSourcesSampled() throws Exception {
+        Path stat = Files.createTempFile("stat", "");
+        String line = "cpu  %d 0 0 %d 0 0 0 0 0 0\ncpu0 %d 0 0 %d 0 0 0 0 0 0\n";
+        ProfileState profileState = new ProfileState();
+        profileState.setActiveProfile(Compositor.PROFILE);
+        CanvasService cpu = new CanvasService() {
+            @Override
+            public String getProfileName() {
+                return "cpu";
+            }
+
+            @Override
+            public void show(CommunicationCreator panel, int index, int count) {
+            }
+        };
+        Compositor compositor = new Compositor(profileState, List.of(new Layer(cpu, 255)));
+        ProcStatSource source = new ProcStatSource(stat, 0, CpuLayout.Mode.ONE_TO_ONE);
+        CountingSource ram = new CountingSource(0, "ram");
+        MetricSampler sampler = new MetricSampler(List.of(source, ram), profileState, compositor, 250);
+        short[] table = new short[2 * CpuLoad.FIELDS];
+        try {
+            Files.writeString(stat, String.format(line, 0, 0, 0, 0));
+            sampler.tick();
+            Files.writeString(stat, String.format(line, 100, 0, 100, 0));
+            sampler.tick();
+            assertEquals(100, readUser(source, table), "the cpu layer's load is sampled");
+            assertNull(ram.latest(), "no layer shows ram");
+        } finally {
+            source.close();
+            Files.delete(stat);
+        }
+    }
+
+    private static short readUser(ProcStatSource source, short[] table) {
+        assertEquals(2, source.getLoad().read(table));
+        return table[CpuLoad.FIELDS + ProcStatReader.USER];
+    }
+
+    @Test
+    void testFailedSampleKeepsThePreviousSnapshot() {
+        CountingSource source = new CountingSource(0, "ram");
+        source.refresh(System.nanoTime());
+        source.fail = true;
+        source.refresh(System.nanoTime());
+        assertEquals(1, (int) source.latest());
+    }
+}
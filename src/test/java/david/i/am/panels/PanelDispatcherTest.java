@@ -0,0 +1,193 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Dispatches to four panels on {@link FakePanelTransport}, so no hardware is needed.
+ */
+class PanelDispatcherTest {
+
+    private static final int PANELS = 4;
+
+    private static PanelFrame draw(int seed) {
+        byte[] payload = new byte[45];
+        payload[0] = (byte) seed;
+        return new PanelFrame().add(CommunicationCreator.CommandVals.DRAW, payload);
+    }
+
+    private static byte[] awaitReceived(FakePanelTransport fake) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (fake.getPacketsReceived() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return fake.takeReceived();
+    }
+
+    @Test
+    void testCanvasIsDrawnOnEveryPanelFromItsOwnThread() throws Exception {
+        List<FakePanelTransport> fakes = new ArrayList<>();
+        List<CommunicationCreator> panels = new ArrayList<>();
+        for (int i = 0; i < PANELS; i++) {
+            FakePanelTransport fake = new FakePanelTransport("panel" + i, 115200);
+            fakes.add(fake);
+            panels.add(new CommunicationCreator(fake, 115200, 0, 30));
+        }
+        PanelRegistry registry = new PanelRegistry(panels);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CanvasService canvas = new CanvasService() {
+            @Override
+            public String getProfileName() {
+                return "canvas";
+            }
+
+            @Override
+            public void show(CommunicationCreator panel, int index, int count) {
+                assertEquals(PANELS, count);
+                threads.add(Thread.currentThread().getName());
+                panel.sendFrame(draw(index));
+            }
+        };
+        PanelDispatcher dispatcher = new PanelDispatcher(registry, List.of(canvas));
+        try {
+            dispatcher.dispatch(canvas);
+            for (int i = 0; i < PANELS; i++) {
+                byte[] received = awaitReceived(fakes.get(i));
+                assertEquals(PanelFrame.HEADER_LENGTH + 45, received.length);
+                assertEquals(i, received[PanelFrame.HEADER_LENGTH], "panel " + i + " shows its own part");
+            }
+            assertEquals(PANELS, threads.size());
+            assertEquals(0, registry.indexOf("panel0"));
+            assertEquals(3, registry.indexOf("panel3"));
+        } finally {
+            dispatcher.shutdown();
+            registry.stop();
+        }
+    }
+
+    @Test
+    void testEveryPanelDrawsTheSameStep() throws Exception {
+        List<CommunicationCreator> panels = new ArrayList<>();
+        for (int i = 0; i < PANELS; i++) {
+            panels.add(new CommunicationCreator(new FakePanelTransport("panel" + i, 115200), 115200, 0, 1000));
+        }
+        PanelRegistry registry = new PanelRegistry(panels);
+        int[] drawn = new int[PANELS];
+        CanvasService animation = new CanvasService() {
+            private volatile int step;
+
+            @Override
+            public String getProfileName() {
+                return "animation";
+            }
+
+            @Override
+            public void nextFrame() {
+                step++;
+            }
+
+            @Override
+            public void show(CommunicationCreator panel, int index, int count) {
+                drawn[index] = step;
+            }
+        };
+        PanelDispatcher dispatcher = new PanelDispatcher(registry, List.of(animation));
+        try {
+            for (int frame = 1; frame <= 3; frame++) {
+                dispatcher.dispatch(animation);
+                for (int i = 0; i < PANELS; i++) {
+                    assertEquals(frame, drawn[i], "panel " + i);
+                }
+            }
+        } finally {
+            dispatcher.shutdown();
+            registry.stop();
+        }
+    }
+
+    @Test
+    void testRenderLoopDrawsTheActiveProfileOnEveryPanel() throws Exception {
+        List<FakePanelTransport> fakes = new ArrayList<>();
+        List<CommunicationCreator> panels = new ArrayList<>();
+        for (int i = 0; i < PANELS; i++) {
+            FakePanelTransport fake = new FakePanelTransport("panel" + i, 115200);
+            fakes.add(fake);
+            panels.add(new CommunicationCreator(fake, 115200, 0, 30));
+        }
+        PanelRegistry registry = new PanelRegistry(panels);
+        CanvasService canvas = new CanvasService() {
+            @Override
+            public String getProfileName() {
+                return "canvas";
+            }
+
+            @Override
+            public void show(CommunicationCreator panel, int index, int count) {
+                if (panel.isFrameDue()) {
+                    panel.sendFrame(draw(index));
+                }
+            }
+        };
+        ProfileState profileState = new ProfileState();
+        PanelDispatcher dispatcher = new PanelDispatcher(registry, List.of(canvas));
+        RenderLoop loop = new RenderLoop(dispatcher, registry, List.of(canvas), profileState, 30);
+        try {
+            loop.start();
+            Thread.sleep(100);
+            assertEquals(0, panels.get(0).getFramesSubmitted(), "nothing drawn while no profile is active");
+
+            profileState.setActiveProfile("canvas");
+            for (int i = 0; i < PANELS; i++) {
+                assertEquals(i, awaitReceived(fakes.get(i))[PanelFrame.HEADER_LENGTH]);
+            }
+        } finally {
+            loop.stop();
+            dispatcher.shutdown();
+            registry.stop();
+        }
+    }
+
+    @Test
+    void testLeftAndRightProfilesDrawOnTheFirstTwoPanels() throws Exception {
+        List<FakePanelTransport> fakes = new ArrayList<>();
+        List<CommunicationCreator> panels = new ArrayList<>();
+        for (int i = 0; i < PANELS; i++) {
+            FakePanelTransport fake = new FakePanelTransport("panel" + i, 115200);
+            fakes.add(fake);
+            panels.add(new CommunicationCreator(fake, 115200, 0, 30));
+        }
+        PanelRegistry registry = new PanelRegistry(panels);
+        PanelService sides = new PanelService() {
+            @Override
+            public String getProfileName() {
+                return "sides";
+            }
+
+            @Override
+            public void showLeft(CommunicationCreator left) {
+                left.sendFrame(draw(10));
+            }
+
+            @Override
+            public void showRight(CommunicationCreator right) {
+                right.sendFrame(draw(11));
+            }
+        };
+        PanelDispatcher dispatcher = new PanelDispatcher(registry, List.of(sides));
+        try {
+            dispatcher.dispatch(sides);
+            assertEquals(10, awaitReceived(fakes.get(0))[PanelFrame.HEADER_LENGTH]);
+            assertEquals(11, awaitReceived(fakes.get(1))[PanelFrame.HEADER_LENGTH]);
+            assertEquals(0, panels.get(2).getFramesSubmitted());
+            assertEquals(0, panels.get(3).getFramesSubmitted());
+        } finally {
+            dispatcher.shutdown();
+            registry.stop();
+        }
+    }
+}
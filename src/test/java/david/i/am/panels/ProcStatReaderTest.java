@@ -0,0 +1,99 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProcStatReaderTest {
+
+    private static final String STAT = """
+        cpu  5130 12 606 48343 116 0 1 544 0 0
+        cpu0 2565 6 303 24171 58 0 1 272 0 0
+        cpu3 2565 6 303 24172 58 0 0 272 0 0
+        intr 48023 0 0 0 0 0 0 0 0 0 0 0 0 1 1 2
+        ctxt 81298
+        btime 1760745392
+        processes 1408
+        procs_running 2
+        procs_blocked 1
+        softirq 24934 0 8042 0 216 0 0 1 9337 0 7338
+        """;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesTotalsCoresAndScalars() throws Exception {
+        Path stat = dir.resolve("stat");
+        Files.writeString(stat, STAT);
+
+        try (ProcStatReader reader = new ProcStatReader(stat, 16, 1)) {
+            reader.sample();
+
+            assertArrayEquals(new long[]{5130, 12, 606, 48343, 116, 0, 1, 544, 0, 0}, reader.total());
+            assertEquals(2, reader.coreCount());
+            assertEquals(0, reader.coreId(0));
+            assertEquals(3, reader.coreId(1));
+            assertEquals(24172, reader.core(1)[ProcStatReader.IDLE]);
+            assertEquals(48023, reader.interrupts());
+            assertEquals(81298, reader.contextSwitches());
+            assertEquals(1760745392, reader.bootTime());
+            assertEquals(1408, reader.processes());
+            assertEquals(2, reader.procsRunning());
+            assertEquals(1, reader.procsBlocked());
+        }
+    }
+
+    @Test
+    void resamplesTheSameFileWithoutReopening() throws Exception {
+        Path stat = dir.resolve("stat");
+        Files.writeString(stat, STAT);
+
+        try (ProcStatReader reader = new ProcStatReader(stat)) {
+            reader.sample();
+            Files.writeString(stat, STAT.replace("cpu0 2565", "cpu0 9999"));
+            reader.sample();
+
+            assertEquals(9999, reader.core(0)[ProcStatReader.USER]);
+            assertEquals(2, reader.coreCount());
+        }
+    }
+
+    @Test
+    void coreGoingOfflineRestartsTheDeltas() throws Exception {
+        Path stat = dir.resolve("stat");
+        Files.writeString(stat, STAT);
+        CpuLoad load = new CpuLoad(new CpuLayout(CpuLayout.Mode.ONE_TO_ONE, 18));
+        short[] table = new short[3 * CpuLoad.FIELDS];
+
+        try (ProcStatReader reader = new ProcStatReader(stat)) {
+            reader.sample();
+            load.update(reader);
+            Files.writeString(stat, STAT.replace("cpu0 2565", "cpu0 2665").replace("24171", "24271"));
+            reader.sample();
+            load.update(reader);
+            assertEquals(3, load.read(table));
+            assertEquals(50, table[CpuLoad.FIELDS + ProcStatReader.USER]);
+            long published = load.sequence();
+
+            // cpu0 goes offline: cpu3 moves up to cpu0's row
+            Files.writeString(stat, STAT.replaceAll("cpu0 .*\\n", ""));
+            reader.sample();
+            load.update(reader);
+            assertEquals(published, load.sequence(), "nothing to diff the new set of cores against");
+
+            Files.writeString(stat, STAT.replaceAll("cpu0 .*\\n", "").replace("cpu3 2565", "cpu3 2575")
+                .replace("24172", "24182"));
+            reader.sample();
+            load.update(reader);
+            int[] coreIds = new int[2];
+            assertEquals(2, load.read(table, coreIds));
+            assertEquals(50, table[CpuLoad.FIELDS + ProcStatReader.USER]);
+            assertEquals(3, coreIds[0], "the row is cpu3's");
+        }
+    }
+}
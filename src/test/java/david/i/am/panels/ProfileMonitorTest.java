@@ -0,0 +1,56 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProfileMonitorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static long awaitProfile(ProfileState state, String profile) throws InterruptedException {
+        long start = System.nanoTime();
+        while (!profile.equals(state.getActiveProfile()) && System.nanoTime() - start < 5_000_000_000L) {
+            Thread.sleep(1);
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    void testChangesApplyWithoutPolling() throws Exception {
+        Path file = tempDir.resolve(".ledmatrix-profile");
+        Files.writeString(file, "ram");
+        ProfileState state = new ProfileState();
+        // A poll interval far beyond the test, so only file events can switch the profile
+        ProfileMonitor monitor = new ProfileMonitor(state, file, 20, 3_600_000);
+        try {
+            monitor.init();
+            assertEquals("ram", state.getActiveProfile());
+            assertTrue(monitor.isWatching());
+
+            Files.writeString(file, "shimmer\n");
+            long latency = awaitProfile(state, "shimmer");
+            assertEquals("shimmer", state.getActiveProfile());
+            assertTrue(latency < 1000, "switched after " + latency + " ms");
+
+            // Replaced by rename, as editors save
+            Path temp = tempDir.resolve(".ledmatrix-profile.tmp");
+            Files.writeString(temp, "cpu");
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            awaitProfile(state, "cpu");
+            assertEquals("cpu", state.getActiveProfile());
+
+            Files.writeString(file, "nonsense");
+            Files.writeString(tempDir.resolve("unrelated"), "ram");
+            Thread.sleep(100);
+            assertEquals("cpu", state.getActiveProfile());
+        } finally {
+            monitor.stop();
+        }
+    }
+}
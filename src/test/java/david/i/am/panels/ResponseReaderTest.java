@@ -0,0 +1,127 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+class ResponseReaderTest {
+
+    /**
+     * A port whose replies the test writes, and which reports them as they arrive.
+     */
+    private static final class ScriptedTransport implements PanelTransport {
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private Runnable listener;
+        private int reads;
+
+        void reply(int fill) {
+            byte[] response = new byte[ResponseReader.RESPONSE_LENGTH];
+            Arrays.fill(response, (byte) fill);
+            Runnable toCall;
+            synchronized (this) {
+                pending.writeBytes(response);
+                toCall = listener;
+            }
+            toCall.run();
+        }
+
+        synchronized int getReads() {
+            return reads;
+        }
+
+        @Override
+        public synchronized boolean setDataListener(Runnable listener) {
+            this.listener = listener;
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return "scripted";
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public int write(byte[] buffer, int offset, int length) {
+            return length;
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            reads++;
+            byte[] bytes = pending.toByteArray();
+            int read = Math.min(length, bytes.length);
+            System.arraycopy(bytes, 0, buffer, offset, read);
+            pending.reset();
+            pending.write(bytes, read, bytes.length - read);
+            return read;
+        }
+
+        @Override
+        public synchronized int bytesAvailable() {
+            return pending.size();
+        }
+
+        @Override
+        public int bytesAwaitingWrite() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void testALateReplyIsNotTakenForTheNextOne() throws Exception {
+        ScriptedTransport port = new ScriptedTransport();
+        ResponseReader reader = new ResponseReader("scripted", () -> port);
+        try {
+            CompletableFuture<byte[]> first = new CompletableFuture<>();
+            reader.expect(CommunicationCreator.CommandVals.VERSION, first, 20);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, failure.getCause());
+            port.reply(1); // the answer to the first query, too late
+
+            CompletableFuture<byte[]> second = new CompletableFuture<>();
+            reader.expect(CommunicationCreator.CommandVals.VERSION, second, 1000);
+            port.reply(2);
+            assertEquals(2, second.get(5, TimeUnit.SECONDS)[0]);
+            assertEquals(ResponseReader.RESPONSE_LENGTH, reader.getDiscarded());
+            assertEquals(1, reader.getTimedOut());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void testAnIdleReaderSleepsUntilBytesArrive() throws Exception {
+        ScriptedTransport port = new ScriptedTransport();
+        ResponseReader reader = new ResponseReader("scripted", () -> port);
+        try {
+            Thread.sleep(ResponseReader.IDLE_POLL_MS);
+            int reads = port.getReads(); // what came before the reader listened
+            Thread.sleep(3 * ResponseReader.IDLE_POLL_MS);
+            assertEquals(reads, port.getReads(), "nothing arrived since, nothing read");
+
+            port.reply(3);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ResponseReader.IDLE_WAIT_MS / 4);
+            while (reader.getUnsolicited() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, reader.getUnsolicited(), "read as soon as it arrived");
+        } finally {
+            reader.close();
+        }
+    }
+}
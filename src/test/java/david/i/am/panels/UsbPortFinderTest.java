@@ -0,0 +1,64 @@
+package david.i.am.panels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class UsbPortFinderTest {
+
+    private final UsbPortFinder finder =
+        new UsbPortFinder(UsbPortFinder.FRAMEWORK_VENDOR_ID, UsbPortFinder.LED_MATRIX_PRODUCT_ID, 2);
+
+    private static UsbPortFinder.Module matrix(String path, String serialNumber, String location) {
+        return new UsbPortFinder.Module(path, UsbPortFinder.FRAMEWORK_VENDOR_ID,
+            UsbPortFinder.LED_MATRIX_PRODUCT_ID, serialNumber, location);
+    }
+
+    @Test
+    void testModulesKeepTheirSideWhateverTheEnumerationOrder() {
+        List<UsbPortFinder.Module> boot = List.of(
+            new UsbPortFinder.Module("/dev/ttyS0", 0, 0, null, null),
+            matrix("/dev/ttyACM0", "FRAKDEBZ01", "1-4.3"),
+            matrix("/dev/ttyACM1", "FRAKDEBZ02", "1-4.2"));
+        List<UsbPortFinder.Module> replugged = List.of(
+            matrix("/dev/ttyACM1", "FRAKDEBZ01", "1-4.3"),
+            matrix("/dev/ttyACM2", "FRAKDEBZ02", "1-4.2"));
+
+        assertEquals("/dev/ttyACM1", finder.select(boot, "", 0, "/dev/left"), "the first USB port");
+        assertEquals("/dev/ttyACM0", finder.select(boot, "", 1, "/dev/right"));
+        assertEquals("/dev/ttyACM2", finder.select(replugged, "", 0, "/dev/left"));
+        assertEquals("/dev/ttyACM1", finder.select(replugged, "", 1, "/dev/right"));
+
+        UsbPortFinder pinned = new UsbPortFinder(UsbPortFinder.FRAMEWORK_VENDOR_ID,
+            UsbPortFinder.LED_MATRIX_PRODUCT_ID, 2);
+        pinned.pin(0, "FRAKDEBZ01");
+        assertEquals("/dev/ttyACM1", pinned.select(boot, "", 1, "/dev/right"), "not the module pinned to the left");
+        assertEquals("/dev/ttyACM0", pinned.select(boot, "FRAKDEBZ01", 0, "/dev/left"));
+        assertEquals("/dev/ttyACM1", pinned.select(replugged, "FRAKDEBZ01", 0, "/dev/left"));
+    }
+
+    @Test
+    void testMissingModules() {
+        List<UsbPortFinder.Module> both = List.of(
+            matrix("/dev/ttyACM0", "FRAKDEBZ01", "1-4.2"),
+            matrix("/dev/ttyACM1", "FRAKDEBZ02", "1-4.3"));
+        List<UsbPortFinder.Module> rightOnly = List.of(matrix("/dev/ttyACM1", "FRAKDEBZ02", "1-4.3"));
+        List<UsbPortFinder.Module> leftOnly = List.of(matrix("/dev/ttyACM2", "FRAKDEBZ01", "1-4.2"));
+
+        assertThrows(IllegalStateException.class, () -> finder.select(rightOnly, "", 0, "/dev/left"),
+            "which side the lone module is on is not known yet");
+        assertThrows(IllegalStateException.class, () -> finder.select(rightOnly, "FRAKDEBZ01", 0, "/dev/left"));
+
+        assertEquals("/dev/ttyACM0", finder.select(both, "", 0, "/dev/left"));
+        assertEquals("/dev/ttyACM1", finder.select(both, "", 1, "/dev/right"));
+        // Once assigned, a module is never handed to the other side
+        assertThrows(IllegalStateException.class, () -> finder.select(rightOnly, "", 0, "/dev/left"));
+        assertEquals("/dev/ttyACM1", finder.select(rightOnly, "", 1, "/dev/right"));
+        assertThrows(IllegalStateException.class, () -> finder.select(leftOnly, "", 1, "/dev/right"));
+        assertEquals("/dev/ttyACM2", finder.select(leftOnly, "", 0, "/dev/left"));
+
+        // No port reports the ids: the configured path
+        assertEquals("/dev/right", finder.select(List.of(), "", 1, "/dev/right"));
+    }
+}